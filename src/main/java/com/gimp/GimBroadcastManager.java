@@ -24,141 +24,967 @@
  */
 package com.gimp;
 
-import com.gimp.gimps.GimPlayer;
+import com.gimp.gimps.GimDelta;
+import com.gimp.gimps.GimLocation;
 import com.gimp.requests.*;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import io.socket.client.Socket;
-import io.socket.emitter.Emitter;
-import java.lang.reflect.Type;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 import java.util.Map;
+import net.runelite.client.plugins.party.messages.TilePing;
 import okhttp3.OkHttpClient;
 
 @Slf4j
 public class GimBroadcastManager
 {
-	private static final Type pingDataTypeForJson = new TypeToken<Map<String, GimPlayer>>()
-	{
-	}.getType();
+	private static final String SEQ_KEY = "seq";
+
+	private static final String SENT_AT_KEY = "sentAt";
+
+	private static final String SERVER_TIME_KEY = "serverTime";
+
+	/* Sent by the server in an ack to ask for a pause, in ms */
+	private static final String RETRY_AFTER_KEY = "retryAfter";
+
+	private static final String NAME_KEY = "name";
+
+	/* Wire keys of the gimp fields, by GimPlayer field index */
+	static final String[] FIELD_KEYS = new String[]{"hp", "maxHp", "prayer", "maxPrayer", "notes", "ghostMode", "location", "lastActivity"};
 
-	private static final String EVENT_BROADCAST = "broadcast";
+	/* Field mask requesting every field */
+	public static final int ALL_FIELDS = -1;
+
+	/* Keys of the data that may go out as a datagram, where only the latest value matters */
+	private static final Set<String> DATAGRAM_KEYS = Set.of("name", "hp", "maxHp", "prayer", "maxPrayer", "location");
+
+	/* How long to wait for a newer datagram of a class before resending the last one reliably */
+	private static final long DATAGRAM_SETTLE_DELAY = 5000;
+
+	private final ServerEndpoints endpoints;
 
 	private final HttpClient httpClient;
 
-	private final SocketClient socketClient;
+	private final String groupName;
+
+	private final OkHttpClient okHttpClient;
+
+	/* Capabilities JSON offered to the server */
+	private final String capabilities;
+
+	/* Transport of the live connection, which may fall back from WebSocket to socket.io */
+	private volatile Transport transport;
+
+	/* Client of the live connection, see connectSocketClient */
+	private volatile PersistentClient persistentClient;
+
+	/* Client connecting to take over from the live one, see migrate */
+	private volatile PersistentClient pendingClient;
+
+	/*
+	 * Listeners of every client, which only pass on the events of the live one.
+	 * Kept here rather than by the clients, since clients are replaced when
+	 * migrating or falling back on another transport.
+	 */
+	private volatile Runnable connectListener;
+
+	private volatile Runnable disconnectListener;
+
+	private volatile Runnable connectErrorListener;
+
+	private volatile Runnable migrateListener;
+
+	private volatile Consumer<String> broadcastListener;
+
+	private volatile Supplier<Map<String, Long>> resumeRequest;
+
+	private volatile Consumer<String> resumeListener;
+
+	private volatile Supplier<Collection<String>> dictionaryNames;
+
+	/* Null unless a UDP port is set in the plugin config */
+	private volatile DatagramClient datagramClient;
+
+	private final int datagramPort;
+
+	/*
+	 * Last data sent as a datagram and not yet resent reliably, by message
+	 * class, see maintainDatagrams. Kept per class, since e.g. a location
+	 * datagram doesn't carry the HP of the one before it.
+	 */
+	private final Map<String, String> datagrams = new HashMap<>();
+
+	private final Map<String, Long> datagramTimes = new HashMap<>();
 
 	private final Gson gson;
 
-	public GimBroadcastManager(String groupName, OkHttpClient okHttpClient, GimPluginConfig config, Gson gson)
+	private final GimClock clock;
+
+	private final GimLatencyTracker latencyTracker;
+
+	private final GimRateLimiter rateLimiter = new GimRateLimiter();
+
+	/* Runs the broadcasts held back by the rate limiter */
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	/* Data held back by the rate limiter, by message class, guarded by itself */
+	private final Map<String, Map<String, Object>> throttled = new HashMap<>();
+
+	/* Exchanges updates with group members on the local network directly, if enabled */
+	private final LanClient lanClient;
+
+	/* Loopback port of the local relay, 0 if relaying is off */
+	private final int relayPort;
+
+	/* Shares our connection with other clients on this machine, if we host the relay */
+	private volatile RelayHost relayHost;
+
+	/* Whether the live connection goes through another client's relay */
+	private volatile boolean relayed;
+
+	/* Set once shut down, after which the manager never connects again */
+	private volatile boolean shutDown = false;
+
+	/* Durable fields not yet acked by the server, replayed whenever the live connection comes back */
+	private final GimOutbox outbox;
+
+	/* What the server said it supports, null until it says anything */
+	private volatile Capabilities serverCapabilities;
+
+	/* Result of the session resume requested on the latest connect, see getSessionResume */
+	private volatile CompletableFuture<Boolean> sessionResume = CompletableFuture.completedFuture(true);
+
+	public GimBroadcastManager(String groupName, String localName, OkHttpClient okHttpClient, GimPluginConfig config, Gson gson, GimClock clock, GimLatencyTracker latencyTracker)
 	{
 		this.gson = gson;
-		httpClient = new HttpClient(groupName, okHttpClient, config);
-		socketClient = new SocketClient(groupName, config);
+		this.clock = clock;
+		this.latencyTracker = latencyTracker;
+		this.groupName = groupName;
+		this.okHttpClient = okHttpClient;
+		endpoints = new ServerEndpoints(config, okHttpClient);
+		httpClient = new HttpClient(groupName, okHttpClient, endpoints);
+		// The first client on this machine hosts the relay, the rest attach to it
+		relayPort = config.localRelay() ? config.relayPort() : 0;
+		relayHost = relayPort > 0 ? startRelayHost() : null;
+		relayed = relayPort > 0 && relayHost == null;
+		datagramPort = config.datagramPort();
+		datagramClient = !relayed && datagramPort > 0 && endpoints.isValid()
+			? new DatagramClient(groupName, URI.create(endpoints.getBaseUrl()).getHost(), datagramPort, gson)
+			: null;
+		outbox = new GimOutbox(groupName, localName, gson);
+		// Anything left over from the last session must not be outversioned by new data
+		clock.observe(outbox.getLastSeq());
+		lanClient = config.lanPeers() ? new LanClient(groupName, config.lanPort(), gson) : null;
+		capabilities = gson.toJson(Capabilities.CLIENT);
+		httpClient.setCapabilities(capabilities);
+		httpClient.setCapabilitiesListener(this::onCapabilities);
+		transport = config.transport();
+		persistentClient = createClient();
+		// Move the live connection whenever a faster endpoint is found, or the current one fails
+		endpoints.setSelectionListener(this::migrate);
+	}
+
+	/**
+	 * Creates a client for the live connection over the current transport.
+	 *
+	 * @return unconnected client
+	 */
+	private PersistentClient createClient()
+	{
+		final PersistentClient client;
+		if (relayed)
+		{
+			client = new RelayClient(groupName, relayPort, gson);
+		}
+		else
+		{
+			client = transport == Transport.WEBSOCKET
+				? new WebSocketClient(groupName, okHttpClient, endpoints, gson)
+				: new SocketClient(groupName, endpoints);
+		}
+		client.setCapabilities(capabilities);
+		client.setCapabilitiesListener(this::onCapabilities);
+		client.setConnectListener(() -> onConnect(client));
+		client.setDisconnectListener(() -> onDisconnect(client));
+		client.setConnectErrorListener(() -> onConnectError(client));
+		client.setBroadcastListener(this::onBroadcast);
+		client.setResumeRequest(() -> resumeRequest != null ? resumeRequest.get() : null);
+		client.setResumeListener(reply -> {
+			if (resumeListener != null)
+			{
+				resumeListener.accept(reply);
+			}
+		});
+		if (client instanceof WebSocketClient)
+		{
+			((WebSocketClient) client).setDictionaryNames(dictionaryNames);
+		}
+		return client;
+	}
+
+	/**
+	 * Starts hosting the local relay, forwarding the requests of guests over
+	 * our own connection.
+	 *
+	 * @return relay host, or null if another client already hosts it
+	 */
+	private RelayHost startRelayHost()
+	{
+		final RelayHost host = RelayHost.bind(groupName, relayPort, gson);
+		if (host == null)
+		{
+			return null;
+		}
+		host.setBroadcastHandler(dataJson -> {
+			try
+			{
+				return getRequestClient().broadcast(dataJson);
+			}
+			catch (Exception e)
+			{
+				return CompletableFuture.failedFuture(e);
+			}
+		});
+		host.setPingHandler(fields -> {
+			try
+			{
+				return getRequestClient().ping(fields);
+			}
+			catch (Exception e)
+			{
+				return CompletableFuture.failedFuture(e);
+			}
+		});
+		host.setBroadcastListener(dataJson -> {
+			final Consumer<String> listener = broadcastListener;
+			if (listener != null)
+			{
+				listener.accept(dataJson);
+			}
+		});
+		host.setCapabilities(() -> serverCapabilities != null ? gson.toJson(serverCapabilities) : null);
+		return host;
 	}
 
 	/**
-	 * Parses JSON string of the ping data and adds to a GimPlayer Map.
+	 * Passes broadcast data pushed by the server to the listener, and to
+	 * every guest of the relay if we host it.
+	 *
+	 * @param dataJson broadcast data in JSON
+	 */
+	private void onBroadcast(String dataJson)
+	{
+		final Consumer<String> listener = broadcastListener;
+		if (listener != null)
+		{
+			listener.accept(dataJson);
+		}
+		final RelayHost host = relayHost;
+		if (host != null)
+		{
+			host.publish(dataJson);
+		}
+	}
+
+	/**
+	 * Handles a client connecting. If it's taking over from the live
+	 * connection, it becomes the live one and the old one is closed.
+	 *
+	 * @param client the client that connected
+	 */
+	private void onConnect(PersistentClient client)
+	{
+		final boolean migrated;
+		final PersistentClient old;
+		synchronized (this)
+		{
+			migrated = client == pendingClient;
+			old = persistentClient;
+			if (migrated)
+			{
+				persistentClient = client;
+				pendingClient = null;
+				// The new server says what it supports once it replies
+				serverCapabilities = null;
+			}
+		}
+		if (migrated)
+		{
+			log.debug("Live connection migrated to {}", client.getConnectedUrl());
+			// Only closed once its replacement has joined the room, so we're never offline
+			old.disconnect();
+		}
+		if (client == persistentClient)
+		{
+			retargetDatagrams(client.getConnectedUrl());
+			replayOutbox(client);
+			fire(connectListener);
+			if (migrated)
+			{
+				fire(migrateListener);
+			}
+		}
+	}
+
+	/**
+	 * Moves the datagram channel to the host of the live connection, if it
+	 * changed, e.g. after a failover or migration. Datagrams would otherwise
+	 * go to the old server until its join expires.
+	 *
+	 * @param baseUrl base URL the live connection is on
+	 */
+	private void retargetDatagrams(String baseUrl)
+	{
+		final DatagramClient previous = datagramClient;
+		if (previous == null || baseUrl == null)
+		{
+			return;
+		}
+		final String host = URI.create(baseUrl).getHost();
+		if (host == null || host.equals(previous.getHost()))
+		{
+			return;
+		}
+		log.debug("Moving datagram channel {} => {}", previous.getHost(), host);
+		final DatagramClient next = new DatagramClient(groupName, host, datagramPort, gson);
+		datagramClient = next;
+		previous.stop();
+		if (broadcastListener != null)
+		{
+			next.start(this::onBroadcast);
+		}
+	}
+
+	private void onDisconnect(PersistentClient client)
+	{
+		if (client == persistentClient)
+		{
+			fire(disconnectListener);
+		}
+	}
+
+	/**
+	 * Handles a client failing to connect. Servers without a WebSocket
+	 * endpoint reject the upgrade, in which case fall back on socket.io
+	 * for the rest of the session.
+	 * <p>
+	 * If the relay host is gone, take over hosting it, and if it hosts
+	 * another group, connect to the server ourselves.
+	 *
+	 * @param client the client that failed to connect
+	 */
+	private void onConnectError(PersistentClient client)
+	{
+		final boolean live = client == persistentClient;
+		if (client instanceof RelayClient && live)
+		{
+			PersistentClient direct = null;
+			synchronized (this)
+			{
+				if (client == persistentClient)
+				{
+					final RelayHost host = ((RelayClient) client).isRejected() ? null : startRelayHost();
+					if (host != null || ((RelayClient) client).isRejected())
+					{
+						log.debug(host != null ? "Relay host gone, taking over" : "Relay hosts another group, connecting directly");
+						relayHost = host;
+						relayed = false;
+						direct = createClient();
+						persistentClient = direct;
+					}
+				}
+			}
+			if (direct != null)
+			{
+				direct.connect();
+			}
+		}
+		if (client instanceof WebSocketClient && ((WebSocketClient) client).isUpgradeRejected())
+		{
+			PersistentClient fallback = null;
+			synchronized (this)
+			{
+				if (live || client == pendingClient)
+				{
+					log.warn("WebSocket transport unavailable, falling back on socket.io");
+					transport = Transport.SOCKET_IO;
+					fallback = createClient();
+					if (live)
+					{
+						persistentClient = fallback;
+					}
+					else
+					{
+						pendingClient = fallback;
+					}
+				}
+			}
+			if (fallback != null)
+			{
+				fallback.connect();
+			}
+		}
+		// The live connection is unaffected if its replacement fails
+		if (live)
+		{
+			fire(connectErrorListener);
+		}
+	}
+
+	/**
+	 * Moves the live connection to the selected endpoint, make-before-break:
+	 * the new connection resumes the session and joins the room before the
+	 * old one is closed, so the group never sees us go quiet. If the live
+	 * connection is already down, it simply reconnects.
+	 */
+	public void migrate()
+	{
+		if (relayed || shutDown)
+		{
+			// The relay host moves its own connection, and a shut down manager has none
+			return;
+		}
+		final String baseUrl = endpoints.getBaseUrl();
+		final PersistentClient client;
+		synchronized (this)
+		{
+			final PersistentClient live = persistentClient;
+			if (!live.isConnected())
+			{
+				client = live;
+			}
+			else if (baseUrl.equals(live.getConnectedUrl()))
+			{
+				// Already there, so give up on any migration in flight
+				cancelMigration();
+				return;
+			}
+			else
+			{
+				final PersistentClient pending = pendingClient;
+				if (pending != null && baseUrl.equals(pending.getConnectedUrl()))
+				{
+					return;
+				}
+				cancelMigration();
+				pendingClient = client = createClient();
+				log.debug("Migrating live connection {} => {}", live.getConnectedUrl(), baseUrl);
+			}
+		}
+		client.connect();
+	}
+
+	private synchronized void cancelMigration()
+	{
+		final PersistentClient pending = pendingClient;
+		pendingClient = null;
+		if (pending != null)
+		{
+			pending.disconnect();
+		}
+	}
+
+	private static void fire(Runnable listener)
+	{
+		if (listener != null)
+		{
+			listener.run();
+		}
+	}
+
+	/**
+	 * Handles the capabilities the server replied with, switching to the
+	 * most efficient modes both sides support. Servers that never reply
+	 * keep getting what every server understands.
+	 *
+	 * @param capabilitiesJson server capabilities JSON
+	 */
+	private void onCapabilities(String capabilitiesJson)
+	{
+		final Capabilities capabilities;
+		try
+		{
+			capabilities = gson.fromJson(capabilitiesJson, Capabilities.class);
+		}
+		catch (Exception e)
+		{
+			log.error("Capabilities parse error: {}", String.valueOf(e));
+			return;
+		}
+		if (capabilities == null || capabilities.equals(serverCapabilities))
+		{
+			return;
+		}
+		log.debug("Server capabilities: {}", capabilities);
+		serverCapabilities = capabilities;
+		final PersistentClient client = persistentClient;
+		if (client instanceof SocketClient)
+		{
+			((SocketClient) client).setSendFields(capabilities.isFields());
+		}
+	}
+
+	/**
+	 * Parses JSON string of the ping data, passing the data of each gimp to a
+	 * handler. A single delta is reused for every gimp, so the handler must
+	 * copy anything it keeps.
 	 *
 	 * @param dataJson JSON string of ping data
-	 * @return map: name => GimPlayer
+	 * @param handler  handler for the data of each gimp
+	 * @throws IOException if the JSON is malformed
+	 */
+	private void parsePingData(String dataJson, Consumer<GimDelta> handler) throws IOException
+	{
+		try (JsonReader reader = new JsonReader(new StringReader(dataJson)))
+		{
+			readGimps(reader, handler);
+		}
+	}
+
+	/**
+	 * Parses JSON string of a session resume reply, passing the data of each
+	 * gimp to a handler like {@link #parsePingData}.
+	 *
+	 * @param dataJson JSON string of resume data
+	 * @param handler  handler for the data of each gimp
+	 * @return whether the reply is a full snapshot rather than missed updates
+	 * @throws IOException if the JSON is malformed
 	 */
-	private Map<String, GimPlayer> parsePingData(String dataJson)
+	private boolean parseResumeData(String dataJson, Consumer<GimDelta> handler) throws IOException
 	{
-		return gson.fromJson(dataJson, pingDataTypeForJson);
+		boolean snapshot = false;
+		try (JsonReader reader = new JsonReader(new StringReader(dataJson)))
+		{
+			reader.beginObject();
+			while (reader.hasNext())
+			{
+				switch (reader.nextName())
+				{
+					case "snapshot":
+						snapshot = reader.nextBoolean();
+						break;
+					case "gimps":
+						readGimps(reader, handler);
+						break;
+					default:
+						reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Reads a JSON object of name => gimp data, passing the data of each
+	 * gimp to a handler through a single reused delta.
+	 *
+	 * @param reader  JSON reader positioned at the object
+	 * @param handler handler for the data of each gimp
+	 * @throws IOException if the JSON is malformed
+	 */
+	private void readGimps(JsonReader reader, Consumer<GimDelta> handler) throws IOException
+	{
+		final GimDelta delta = new GimDelta();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			final String name = reader.nextName();
+			readDelta(reader, delta);
+			if (delta.getName() == null)
+			{
+				delta.setName(name);
+			}
+			handler.accept(delta);
+		}
+		reader.endObject();
 	}
 
 	/**
-	 * Parses JSON string of the broadcast data and maps to a GimPlayer instance.
+	 * Parses JSON string of the broadcast data into a reusable delta.
 	 *
 	 * @param dataJson JSON string of broadcast data
-	 * @return GimPlayer
+	 * @param delta    delta to parse into, cleared first
+	 * @throws IOException if the JSON is malformed
 	 */
-	public GimPlayer parseBroadcastData(String dataJson)
+	public void parseBroadcastData(String dataJson, GimDelta delta) throws IOException
 	{
-		return gson.fromJson(dataJson, GimPlayer.class);
+		try (JsonReader reader = new JsonReader(new StringReader(dataJson)))
+		{
+			readDelta(reader, delta);
+		}
+	}
+
+	/**
+	 * Reads a JSON object of gimp data into a delta. Null and unknown
+	 * values are skipped.
+	 *
+	 * @param reader JSON reader positioned at the object
+	 * @param delta  delta to read into, cleared first
+	 * @throws IOException if the JSON is malformed
+	 */
+	private void readDelta(JsonReader reader, GimDelta delta) throws IOException
+	{
+		delta.clear();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			final String key = reader.nextName();
+			if (reader.peek() == JsonToken.NULL)
+			{
+				reader.skipValue();
+				continue;
+			}
+			switch (key)
+			{
+				case "name":
+					delta.setName(reader.nextString());
+					break;
+				case SEQ_KEY:
+					delta.setSeq(reader.nextLong());
+					break;
+				case SENT_AT_KEY:
+					delta.setSentAt(reader.nextLong());
+					break;
+				case SERVER_TIME_KEY:
+					delta.setServerTime(reader.nextLong());
+					break;
+				case "hp":
+					delta.setHp(reader.nextInt());
+					break;
+				case "maxHp":
+					delta.setMaxHp(reader.nextInt());
+					break;
+				case "prayer":
+					delta.setPrayer(reader.nextInt());
+					break;
+				case "maxPrayer":
+					delta.setMaxPrayer(reader.nextInt());
+					break;
+				case "notes":
+					delta.setNotes(reader.nextString());
+					break;
+				case "ghostMode":
+					delta.setGhostMode(reader.nextBoolean());
+					break;
+				case "location":
+					delta.setLocation(readLocation(reader));
+					break;
+				case "lastActivity":
+					delta.setLastActivity(reader.nextString());
+					break;
+				case "tilePing":
+					delta.setTilePing(gson.fromJson(reader, TilePing.class));
+					break;
+				case "world":
+					delta.setWorld(reader.nextInt());
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	/**
+	 * Reads a number out of a JSON ack, e.g. the server time, if the server
+	 * included it.
+	 *
+	 * @param ackJson JSON string of ack data
+	 * @param key     key of the number
+	 * @return the number, 0 if none
+	 */
+	private static long parseAckNumber(String ackJson, String key)
+	{
+		if (ackJson == null || !ackJson.contains(key))
+		{
+			return 0;
+		}
+		try (JsonReader reader = new JsonReader(new StringReader(ackJson)))
+		{
+			reader.beginObject();
+			while (reader.hasNext())
+			{
+				if (reader.nextName().equals(key) && reader.peek() == JsonToken.NUMBER)
+				{
+					return reader.nextLong();
+				}
+				reader.skipValue();
+			}
+		}
+		catch (Exception e)
+		{
+			log.debug("Ack parse error: {}", String.valueOf(e));
+		}
+		return 0;
+	}
+
+	private static int readLocation(JsonReader reader) throws IOException
+	{
+		int x = 0;
+		int y = 0;
+		int plane = 0;
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			final String coordinate = reader.nextName();
+			if (coordinate.equals(GimLocation.Coordinate.x.name()))
+			{
+				x = reader.nextInt();
+			}
+			else if (coordinate.equals(GimLocation.Coordinate.y.name()))
+			{
+				y = reader.nextInt();
+			}
+			else if (coordinate.equals(GimLocation.Coordinate.plane.name()))
+			{
+				plane = reader.nextInt();
+			}
+			else
+			{
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return GimLocation.pack(x, y, plane);
 	}
 
 	/**
-	 * Checks if socket client is connected.
+	 * Probes the round trip time of every server endpoint, switching to the
+	 * fastest healthy one. The live connection moves over the next time it
+	 * connects.
+	 */
+	public void probeEndpoints()
+	{
+		if (relayed)
+		{
+			return;
+		}
+		endpoints.probe();
+	}
+
+	/**
+	 * Parses the server addresses from the config again on next use, e.g.
+	 * once the user changed them.
+	 */
+	public void invalidateEndpoints()
+	{
+		endpoints.invalidate();
+	}
+
+	/**
+	 * Checks if the live connection is up.
 	 *
 	 * @return whether socket is connected
 	 */
 	public boolean isSocketConnected()
 	{
-		return socketClient.isConnected();
+		return persistentClient.isConnected();
 	}
 
 	/**
-	 * Connects socket client to the server and joins the group's room.
+	 * Connects the live connection to the server and joins the group's room,
+	 * over the transport chosen in the plugin config.
 	 */
 	public void connectSocketClient()
 	{
-		socketClient.connect();
+		if (isServerless() || shutDown)
+		{
+			return;
+		}
+		persistentClient.connect();
 	}
 
 	/**
-	 * Registers a "connect" listener.
+	 * Maps a field mask to the wire keys of its fields.
 	 *
-	 * @param handleConnect listener for the connect event
+	 * @param fields bitmask of GimPlayer field indices, or ALL_FIELDS
+	 * @return list of field keys, or null for all fields
 	 */
-	public void onBroadcastConnect(Emitter.Listener handleConnect)
+	private static List<String> getFieldKeys(int fields)
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
+		if (fields == ALL_FIELDS)
+		{
+			return null;
+		}
+		final List<String> keys = new ArrayList<>(FIELD_KEYS.length);
+		for (int field = 0; field < FIELD_KEYS.length; field++)
 		{
-			client.on(Socket.EVENT_CONNECT, handleConnect);
+			if ((fields & (1 << field)) != 0)
+			{
+				keys.add(FIELD_KEYS[field]);
+			}
 		}
+		return keys;
 	}
 
 	/**
-	 * Registers a "disconnect" listener.
+	 * Resumes the session whenever the socket (re)connects, by sending the last
+	 * seen sequence number of each gimp along with the connection-ack. A server
+	 * that supports resuming replies with only the updates missed since then,
+	 * or with a full snapshot if too much was missed.
 	 *
-	 * @param handleDisconnect listener for the disconnect event
+	 * @param lastSeen supplies map: name => last seen sequence number
+	 * @param handler  handler for the data of each gimp in the reply, which
+	 *                 is passed a reused delta
+	 */
+	public void enableSessionResume(Supplier<Map<String, Long>> lastSeen, Consumer<GimDelta> handler)
+	{
+		final Supplier<Map<String, Long>> resumeRequest = () -> {
+			final Map<String, Long> request = lastSeen.get();
+			final Capabilities capabilities = serverCapabilities;
+			if (!request.isEmpty() && capabilities != null && !capabilities.isResume())
+			{
+				// Don't wait on a reply that will never come
+				sessionResume = CompletableFuture.failedFuture(new UnsupportedOperationException("Server can't resume"));
+				return null;
+			}
+			sessionResume = request.isEmpty() ? CompletableFuture.completedFuture(true) : new CompletableFuture<>();
+			return request;
+		};
+		final Consumer<String> resumeListener = reply -> {
+			log.debug("Resume data: {}", reply);
+			try
+			{
+				sessionResume.complete(parseResumeData(reply, handler));
+			}
+			catch (Exception e)
+			{
+				log.error("Resume parse error: {}", String.valueOf(e));
+				sessionResume.complete(true);
+			}
+		};
+		this.resumeRequest = resumeRequest;
+		this.resumeListener = resumeListener;
+	}
+
+	/**
+	 * Offers to compress the live connection on every connect, with a preset
+	 * dictionary that includes the names of the group's members. Only the
+	 * WebSocket transport can negotiate compression.
+	 *
+	 * @param names supplies the names of the group's members
 	 */
-	public void onBroadcastDisconnect(Emitter.Listener handleDisconnect)
+	public void enableCompression(Supplier<Collection<String>> names)
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
+		dictionaryNames = names;
+		for (PersistentClient client : new PersistentClient[]{persistentClient, pendingClient})
 		{
-			client.on(Socket.EVENT_DISCONNECT, handleDisconnect);
+			if (client instanceof WebSocketClient)
+			{
+				((WebSocketClient) client).setDictionaryNames(names);
+			}
 		}
 	}
 
 	/**
-	 * Registers a "connect_error" listener.
+	 * Gets the result of the session resume requested on the latest connect,
+	 * which fails if the server said it can't resume, and never completes if
+	 * the server doesn't say and doesn't support resuming.
+	 *
+	 * @return future of whether the server replied with a full snapshot, true
+	 * if there was nothing to resume
+	 */
+	public CompletableFuture<Boolean> getSessionResume()
+	{
+		return sessionResume;
+	}
+
+	/**
+	 * Registers a "connect" listener, replacing the previous one.
+	 *
+	 * @param handleConnect listener for the connect event
+	 */
+	public void onBroadcastConnect(Runnable handleConnect)
+	{
+		connectListener = handleConnect;
+	}
+
+	/**
+	 * Registers a "disconnect" listener, replacing the previous one.
+	 *
+	 * @param handleDisconnect listener for the disconnect event
+	 */
+	public void onBroadcastDisconnect(Runnable handleDisconnect)
+	{
+		disconnectListener = handleDisconnect;
+	}
+
+	/**
+	 * Registers a "connect_error" listener, replacing the previous one.
 	 *
 	 * @param handleError listener for the connect_error event
 	 */
-	public void onBroadcastConnectError(Emitter.Listener handleError)
+	public void onBroadcastConnectError(Runnable handleError)
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
-		{
-			client.on(Socket.EVENT_CONNECT_ERROR, handleError);
-		}
+		connectErrorListener = handleError;
+	}
+
+	/**
+	 * Registers a listener for the live connection moving to another
+	 * endpoint, replacing the previous one. Called after the connect
+	 * listener, and should resend anything the new server may not have.
+	 *
+	 * @param handleMigrate listener for the migration
+	 */
+	public void onBroadcastMigrate(Runnable handleMigrate)
+	{
+		migrateListener = handleMigrate;
 	}
 
 	/**
-	 * Disconnects socket client from the server.
+	 * Disconnects the live connection from the server.
 	 */
 	public void disconnectSocketClient()
 	{
-		socketClient.disconnect();
+		cancelMigration();
+		persistentClient.disconnect();
+	}
+
+	/**
+	 * Checks whether there is no server and updates are only exchanged with
+	 * peers on the local network.
+	 *
+	 * @return whether running without a server
+	 */
+	private boolean isServerless()
+	{
+		return lanClient != null && !endpoints.isValid();
 	}
 
 	/**
-	 * Gets broadcast client, using the socket client if it's
-	 * connected and falling back on the HTTP client.
+	 * Gets broadcast client, using the live connection if it's
+	 * up and falling back on the HTTP client. Without a server,
+	 * the LAN client is used for everything.
 	 *
-	 * @return a SocketClient or HTTPClient
+	 * @return a PersistentClient, HTTPClient or LanClient
 	 */
 	private RequestClient getRequestClient()
 	{
-		if (socketClient.isConnected())
+		if (isServerless())
+		{
+			return lanClient;
+		}
+		final PersistentClient client = persistentClient;
+		if (client.isConnected())
 		{
-			return socketClient;
+			return client;
 		}
 		else
 		{
@@ -167,44 +993,328 @@ public class GimBroadcastManager
 	}
 
 	/**
-	 * Starts listening for the "broadcast" socket event and passes in a listener
-	 * to handle the broadcast data.
+	 * Starts listening for broadcasts pushed by the server and passes in
+	 * a listener to handle the broadcast data.
 	 *
-	 * @param handleBroadcast handler for processing the broadcast data
+	 * @param handleBroadcast handler for processing the broadcast data in JSON
 	 */
-	public void listen(Emitter.Listener handleBroadcast)
+	public void listen(Consumer<String> handleBroadcast)
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
+		broadcastListener = handleBroadcast;
+		final DatagramClient udpClient = datagramClient;
+		if (udpClient != null)
 		{
-			client.on(EVENT_BROADCAST, handleBroadcast);
+			udpClient.start(this::onBroadcast);
+		}
+		if (lanClient != null)
+		{
+			lanClient.start(this::onBroadcast);
 		}
 	}
 
 	/**
-	 * Turns off the listener for the "broadcast" event.
+	 * Turns off the listener for broadcasts.
 	 */
 	public void stopListening()
 	{
-		Socket client = socketClient.getClient();
-		if (client != null)
+		broadcastListener = null;
+		final DatagramClient udpClient = datagramClient;
+		if (udpClient != null)
+		{
+			udpClient.stop();
+		}
+		if (lanClient != null)
+		{
+			lanClient.stop();
+		}
+	}
+
+	/**
+	 * Keeps the datagram channel joined, and resends the last datagram of
+	 * each message class reliably if nothing newer of the class went out
+	 * since, so a lost final update doesn't leave a stale value behind.
+	 * Restarts the datagram reader if its channel failed. Should be called
+	 * periodically.
+	 */
+	public void maintainDatagrams()
+	{
+		final DatagramClient udpClient = datagramClient;
+		if (udpClient == null)
+		{
+			return;
+		}
+		udpClient.start(this::onBroadcast);
+		udpClient.join();
+		final long now = System.currentTimeMillis();
+		final List<String> settled = new ArrayList<>();
+		synchronized (datagrams)
+		{
+			final Iterator<Map.Entry<String, Long>> it = datagramTimes.entrySet().iterator();
+			while (it.hasNext())
+			{
+				final Map.Entry<String, Long> entry = it.next();
+				if (now - entry.getValue() >= DATAGRAM_SETTLE_DELAY)
+				{
+					settled.add(datagrams.remove(entry.getKey()));
+					it.remove();
+				}
+			}
+		}
+		final RequestClient requestClient = getRequestClient();
+		for (String dataJson : settled)
+		{
+			// Keeps its original sequence number, so it's dropped if anything newer arrived
+			send(requestClient, dataJson, now, null);
+		}
+	}
+
+	/**
+	 * Resends every durable field the server hasn't acked yet, e.g. notes
+	 * changed while offline or in a previous session, each with the
+	 * sequence number it was recorded with. Receivers drop anything they
+	 * already have newer data for.
+	 *
+	 * @param requestClient client to resend the fields with
+	 */
+	private void replayOutbox(RequestClient requestClient)
+	{
+		if (outbox.isEmpty() || rateLimiter.isPaused(System.currentTimeMillis()))
 		{
-			client.off(EVENT_BROADCAST);
+			return;
+		}
+		for (Map<String, Object> data : outbox.getPending())
+		{
+			log.debug("Replaying unacked broadcast of {}", data.keySet());
+			final long sentAt = System.currentTimeMillis();
+			data.put(SENT_AT_KEY, sentAt + latencyTracker.getClockOffset());
+			send(requestClient, gson.toJson(data), sentAt, data);
 		}
 	}
 
 	/**
-	 * Sends broadcast request to the server via HTTP or socket.
+	 * Stops sending anything held back by the rate limiter, and closes
+	 * the outbox. Anything still unacked is replayed next session.
+	 */
+	public void shutdown()
+	{
+		shutDown = true;
+		scheduler.shutdownNow();
+		outbox.close();
+		final RelayHost host = relayHost;
+		relayHost = null;
+		if (host != null)
+		{
+			host.close();
+		}
+		synchronized (throttled)
+		{
+			throttled.clear();
+		}
+	}
+
+	/**
+	 * Sends broadcast request to the server via HTTP or socket, stamping
+	 * the data with the next sequence number so receivers can discard it
+	 * if it arrives after newer data, and with the send time in server time.
+	 * If the server acks with its own time, the ack feeds the clock offset.
+	 * <p>
+	 * Data where only the latest value matters goes out as a datagram
+	 * instead, if the datagram channel is joined.
+	 * <p>
+	 * If its message class is over its rate limit, or the server asked for
+	 * a pause, the data is held back and merged with any later data of the
+	 * same class, so the latest state still goes out once allowed.
+	 * <p>
+	 * Durable fields, e.g. notes, are written to the outbox before they are
+	 * sent, and stay there until the server acks them.
+	 * <p>
+	 * Peers on the local network get the data straight from us first, and
+	 * drop the copy relayed by the server by its sequence number.
 	 *
 	 * @param data gimp data
 	 */
 	public void broadcast(Map<String, Object> data)
 	{
+		final String messageClass = GimRateLimiter.getMessageClass(data, NAME_KEY);
+		final long wait = rateLimiter.tryAcquire(messageClass, System.currentTimeMillis());
+		if (wait > 0)
+		{
+			holdBack(messageClass, data, wait);
+			return;
+		}
+		dropHeldBack(data);
+		final boolean idempotent = DATAGRAM_KEYS.containsAll(data.keySet());
+		final long sentAt = System.currentTimeMillis();
+		final long seq = clock.next();
+		data.put(SEQ_KEY, seq);
+		data.put(SENT_AT_KEY, sentAt + latencyTracker.getClockOffset());
+		outbox.record(data, (String) data.get(NAME_KEY), seq);
+		final String dataJson = gson.toJson(data);
+		final RelayHost host = relayHost;
+		if (host != null)
+		{
+			// The server doesn't send our own broadcasts back, so guests get them from us
+			host.publish(dataJson);
+		}
+		final RequestClient requestClient = getRequestClient();
+		if (lanClient != null && requestClient != lanClient)
+		{
+			lanClient.broadcast(dataJson);
+		}
+		final DatagramClient udpClient = datagramClient;
+		if (idempotent && udpClient != null && udpClient.isJoined() && udpClient.broadcast(dataJson))
+		{
+			synchronized (datagrams)
+			{
+				datagrams.put(messageClass, dataJson);
+				datagramTimes.put(messageClass, sentAt);
+			}
+			return;
+		}
+		if (udpClient != null)
+		{
+			// Anything newer of the class going out reliably supersedes its last datagram
+			synchronized (datagrams)
+			{
+				datagrams.remove(messageClass);
+				datagramTimes.remove(messageClass);
+			}
+		}
+		send(requestClient, dataJson, sentAt, data);
+	}
+
+	/**
+	 * Holds back data until its message class may be sent again, merging it
+	 * into any data of the class already held back.
+	 *
+	 * @param messageClass message class
+	 * @param data         gimp data, without the seq and send time
+	 * @param wait         how long until the class may be sent again
+	 */
+	private void holdBack(String messageClass, Map<String, Object> data, long wait)
+	{
+		// Held back data is lost on shutdown, so make sure anything durable survives it
+		outbox.record(data, (String) data.get(NAME_KEY), clock.next());
+		synchronized (throttled)
+		{
+			final Map<String, Object> heldBack = throttled.get(messageClass);
+			if (heldBack != null)
+			{
+				heldBack.putAll(data);
+				return;
+			}
+			throttled.put(messageClass, new HashMap<>(data));
+		}
 		try
 		{
-			RequestClient requestClient = getRequestClient();
-			String dataJson = gson.toJson(data);
-			requestClient.broadcast(dataJson).thenAccept((result) -> log.debug("Broadcast data: {}", result));
+			scheduler.schedule(() -> {
+				final Map<String, Object> heldBack;
+				synchronized (throttled)
+				{
+					heldBack = throttled.remove(messageClass);
+				}
+				if (heldBack != null)
+				{
+					broadcast(heldBack);
+				}
+			}, wait, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			log.debug("Broadcast held back after shutdown");
+		}
+	}
+
+	/**
+	 * Drops the fields in data about to be sent from any data held back,
+	 * since they would only overwrite the newer values with older ones.
+	 *
+	 * @param data gimp data about to be sent
+	 */
+	private void dropHeldBack(Map<String, Object> data)
+	{
+		synchronized (throttled)
+		{
+			if (throttled.isEmpty())
+			{
+				return;
+			}
+			final Iterator<Map<String, Object>> it = throttled.values().iterator();
+			while (it.hasNext())
+			{
+				final Map<String, Object> heldBack = it.next();
+				for (String key : data.keySet())
+				{
+					if (!key.equals(NAME_KEY))
+					{
+						heldBack.remove(key);
+					}
+				}
+				if (heldBack.size() == 1 && heldBack.containsKey(NAME_KEY))
+				{
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the broadcast data via the request client, feeding the
+	 * clock offset from the ack and acking its durable fields in the outbox.
+	 * Pauses sending if the server is throttling us, holding the data back
+	 * to retry once the pause is over.
+	 *
+	 * @param requestClient client to send the data with
+	 * @param dataJson      stamped gimp data in JSON
+	 * @param sentAt        local send time
+	 * @param data          gimp data to retry if throttled, or null
+	 */
+	private void send(RequestClient requestClient, String dataJson, long sentAt, Map<String, Object> data)
+	{
+		final Capabilities capabilities = serverCapabilities;
+		if (requestClient != httpClient && capabilities != null && capabilities.getMaxFrameSize() > 0
+			&& dataJson.length() > capabilities.getMaxFrameSize())
+		{
+			// e.g. long notes, which the live connection would drop
+			requestClient = httpClient;
+		}
+		try
+		{
+			requestClient.broadcast(dataJson).whenComplete((result, ex) -> {
+				final long ackedAt = System.currentTimeMillis();
+				if (ex instanceof ThrottledException)
+				{
+					final long retryAfter = ((ThrottledException) ex).getRetryAfter();
+					rateLimiter.pause(retryAfter, ackedAt);
+					if (data != null)
+					{
+						data.remove(SEQ_KEY);
+						data.remove(SENT_AT_KEY);
+						holdBack(GimRateLimiter.getMessageClass(data, NAME_KEY), data, retryAfter);
+					}
+					return;
+				}
+				if (ex != null)
+				{
+					return;
+				}
+				log.debug("Broadcast data: {}", result);
+				if (data != null && data.get(SEQ_KEY) instanceof Long)
+				{
+					outbox.ack(data.keySet(), (String) data.get(NAME_KEY), (Long) data.get(SEQ_KEY));
+				}
+				final long serverTime = parseAckNumber(result, SERVER_TIME_KEY);
+				if (serverTime != 0)
+				{
+					latencyTracker.onAck(sentAt, serverTime, ackedAt);
+				}
+				// Servers on a live connection ask to slow down in the ack
+				final long retryAfter = parseAckNumber(result, RETRY_AFTER_KEY);
+				if (retryAfter > 0)
+				{
+					rateLimiter.pause(retryAfter, ackedAt);
+				}
+			});
 		}
 		catch (Exception e)
 		{
@@ -213,18 +1323,42 @@ public class GimBroadcastManager
 	}
 
 	/**
-	 * Sends ping request to the server via HTTP or socket.
+	 * Sends ping request to the server via HTTP or socket, passing the data
+	 * of each gimp in the result to a handler. The delta passed to the
+	 * handler is reused, so the handler must copy anything it keeps.
+	 * <p>
+	 * The field mask is a hint: the server may still return other fields,
+	 * which are applied like any other data.
 	 *
-	 * @return future of map: name => GimPlayer
+	 * @param fields  bitmask of GimPlayer field indices to request, or ALL_FIELDS
+	 * @param handler handler for the data of each gimp
+	 * @return future completed once the result is handled
 	 */
-	public CompletableFuture<Map<String, GimPlayer>> ping()
+	public CompletableFuture<Void> ping(int fields, Consumer<GimDelta> handler)
 	{
+		if (rateLimiter.isPaused(System.currentTimeMillis()))
+		{
+			log.debug("Ping skipped, server asked for a pause");
+			return null;
+		}
 		RequestClient requestClient = getRequestClient();
 		try
 		{
-			return requestClient.ping().thenApply((result) -> {
+			return requestClient.ping(getFieldKeys(fields)).whenComplete((result, ex) -> {
+				if (ex instanceof ThrottledException)
+				{
+					rateLimiter.pause(((ThrottledException) ex).getRetryAfter(), System.currentTimeMillis());
+				}
+			}).thenAccept((result) -> {
 				log.debug("Ping data: {}", result);
-				return parsePingData(result);
+				try
+				{
+					parsePingData(result, handler);
+				}
+				catch (Exception e)
+				{
+					log.error("Ping parse error: {}", String.valueOf(e));
+				}
 			});
 		}
 		catch (Exception e)
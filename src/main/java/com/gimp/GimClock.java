@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hybrid logical clock that stamps outbound messages with a sequence number.
+ * Sequence numbers follow wall time in milliseconds, but never repeat or go
+ * backwards, so receivers can order a sender's messages across transports.
+ */
+public class GimClock
+{
+	final private AtomicLong last = new AtomicLong();
+
+	/**
+	 * Gets the next sequence number.
+	 *
+	 * @return sequence number greater than any returned before
+	 */
+	public long next()
+	{
+		final long now = System.currentTimeMillis();
+		return last.updateAndGet(prev -> Math.max(now, prev + 1));
+	}
+
+	/**
+	 * Moves the clock past a sequence number this sender has used before,
+	 * e.g. one read back from the server after a restart with a slower clock.
+	 *
+	 * @param seq previously used sequence number
+	 */
+	public void observe(long seq)
+	{
+		last.accumulateAndGet(seq, Math::max);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with power-of-two millisecond buckets,
+ * so recording never allocates.
+ */
+public class GimLatencyHistogram
+{
+	private static final int BUCKETS = 20;
+
+	/* Bucket i counts latencies below 2^i ms, the last one everything above */
+	final private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	final private AtomicLong count = new AtomicLong();
+
+	final private AtomicLong max = new AtomicLong();
+
+	public void record(long millis)
+	{
+		final long latency = Math.max(0, millis);
+		final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(latency));
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		max.accumulateAndGet(latency, Math::max);
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * Gets an upper bound of the given percentile.
+	 *
+	 * @param percentile percentile between 0 and 1
+	 * @return upper bound of the percentile in milliseconds
+	 */
+	public long getPercentile(double percentile)
+	{
+		final long target = (long) Math.ceil(count.get() * percentile);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS - 1; i++)
+		{
+			seen += buckets.get(i);
+			if (seen >= target)
+			{
+				return Math.min(1L << i, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "n=" + getCount()
+			+ " p50<=" + getPercentile(0.5) + "ms"
+			+ " p90<=" + getPercentile(0.9) + "ms"
+			+ " p99<=" + getPercentile(0.99) + "ms"
+			+ " max=" + max.get() + "ms";
+	}
+}
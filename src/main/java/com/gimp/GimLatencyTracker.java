@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp;
+
+import com.gimp.gimps.GimDelta;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Estimates the offset of the local clock from the server's, and traces how
+ * stale inbound gimp data is by the time it's received and rendered.
+ * <p>
+ * The clock offset is estimated NTP-style from broadcast acks that carry the
+ * server's time, keeping the sample with the shortest round trip out of the
+ * last few, since it has the least room for error. Senders stamp broadcasts
+ * with their send time in server time, so receivers can compare it against
+ * their own clock without knowing the sender's offset.
+ */
+@Slf4j
+@Singleton
+public class GimLatencyTracker
+{
+	private static final int OFFSET_SAMPLES = 8;
+
+	private static final String FULL_MESSAGE = "full";
+
+	@Inject
+	private GimPluginConfig config;
+
+	/* Estimated server time minus local time */
+	private volatile long clockOffset = 0;
+
+	/* Ring of recent offset samples and their round trip times, guarded by this */
+	final private long[] offsetSamples = new long[OFFSET_SAMPLES];
+
+	final private long[] delaySamples = new long[OFFSET_SAMPLES];
+
+	private int sampleCount = 0;
+
+	/* Stage and member or message type => latency histogram */
+	final private Map<String, GimLatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+	public boolean isEnabled()
+	{
+		return config.latencyTracing();
+	}
+
+	public long getClockOffset()
+	{
+		return clockOffset;
+	}
+
+	/**
+	 * Adds a clock offset sample from a request the server acked with its time.
+	 *
+	 * @param sentAt     local time the request was sent
+	 * @param serverTime server time the request was handled
+	 * @param ackedAt    local time the ack was received
+	 */
+	public synchronized void onAck(long sentAt, long serverTime, long ackedAt)
+	{
+		final long delay = ackedAt - sentAt;
+		if (delay < 0)
+		{
+			return;
+		}
+		// Assume the request and the ack each took half of the round trip
+		final int slot = sampleCount++ % OFFSET_SAMPLES;
+		offsetSamples[slot] = serverTime - (sentAt + delay / 2);
+		delaySamples[slot] = delay;
+		int best = 0;
+		for (int i = 1; i < Math.min(sampleCount, OFFSET_SAMPLES); i++)
+		{
+			if (delaySamples[i] < delaySamples[best])
+			{
+				best = i;
+			}
+		}
+		clockOffset = offsetSamples[best];
+	}
+
+	/**
+	 * Records how long inbound gimp data took to arrive, if its sender
+	 * stamped it. If the server stamped it too, the time is split into
+	 * sender to server and server to receiver.
+	 *
+	 * @param gimpData inbound gimp data, stamped with its receive time
+	 */
+	public void recordReceive(GimDelta gimpData)
+	{
+		if (gimpData.getSentAt() == 0)
+		{
+			return;
+		}
+		final String type = getMessageType(gimpData);
+		final long receivedAt = gimpData.getReceivedAt() + clockOffset;
+		if (gimpData.getServerTime() != 0)
+		{
+			record("send>server", gimpData.getName(), type, gimpData.getServerTime() - gimpData.getSentAt());
+			record("server>receive", gimpData.getName(), type, receivedAt - gimpData.getServerTime());
+		}
+		record("send>receive", gimpData.getName(), type, receivedAt - gimpData.getSentAt());
+	}
+
+	/**
+	 * Records how long inbound gimp data waited between being received
+	 * and being published for the next frame to render.
+	 *
+	 * @param gimpData inbound gimp data, stamped with the receive time of the oldest merged data
+	 */
+	public void recordRender(GimDelta gimpData)
+	{
+		if (gimpData.getReceivedAt() == 0)
+		{
+			return;
+		}
+		record("receive>render", gimpData.getName(), getMessageType(gimpData), System.currentTimeMillis() - gimpData.getReceivedAt());
+	}
+
+	private void record(String stage, String name, String type, long millis)
+	{
+		getHistogram(stage + "/" + name).record(millis);
+		getHistogram(stage + "/" + type).record(millis);
+	}
+
+	private GimLatencyHistogram getHistogram(String key)
+	{
+		return histograms.computeIfAbsent(key, k -> new GimLatencyHistogram());
+	}
+
+	/**
+	 * Names the kind of message gimp data came from, i.e. its only field or
+	 * "full" if it has several.
+	 *
+	 * @param gimpData inbound gimp data
+	 * @return message type
+	 */
+	private static String getMessageType(GimDelta gimpData)
+	{
+		String type = null;
+		for (int field = 0; field < GimBroadcastManager.FIELD_KEYS.length; field++)
+		{
+			if (gimpData.has(field))
+			{
+				if (type != null)
+				{
+					return FULL_MESSAGE;
+				}
+				type = GimBroadcastManager.FIELD_KEYS[field];
+			}
+		}
+		return type != null ? type : FULL_MESSAGE;
+	}
+
+	/**
+	 * Logs every latency histogram along with the clock offset.
+	 */
+	public void logSummary()
+	{
+		final StringBuilder summary = new StringBuilder("Update latency (clock offset ").append(clockOffset).append("ms):");
+		for (Map.Entry<String, GimLatencyHistogram> entry : new TreeMap<>(histograms).entrySet())
+		{
+			summary.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue());
+		}
+		log.info(summary.toString());
+	}
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+/**
+ * Durable record of broadcast fields that must reach the server, e.g. notes,
+ * that haven't been acked yet. Fields are appended to a file per group and
+ * local gimp before they are sent and acked once the server replies, so
+ * anything still pending after a dropped connection or a client restart can
+ * be replayed. Clients of other accounts on the same machine use their own.
+ * <p>
+ * Only the latest value of each field is kept. The file is append-only and
+ * compacted down to the pending values once it grows past a few dozen lines,
+ * so it stays small no matter how long we are offline. All file I/O happens
+ * in order on a background thread, so recording never blocks the caller.
+ */
+@Slf4j
+public class GimOutbox
+{
+	private final static File OUTBOX_DIR = new File(RuneLite.RUNELITE_DIR, "gimp");
+
+	/* Fields worth keeping until acked, the rest are resent periodically anyway */
+	static final Set<String> DURABLE_KEYS = Set.of("notes", "ghostMode", "lastActivity");
+
+	/* Appended lines after which the file is compacted */
+	private final static int COMPACT_THRESHOLD = 64;
+
+	/**
+	 * A line of the outbox file. Either records fields to send, or acks
+	 * the fields sent with a sequence number.
+	 */
+	private static class Entry
+	{
+		String name;
+
+		long seq;
+
+		/* Field => value, for recorded fields */
+		Map<String, Object> fields;
+
+		/* Keys of the acked fields */
+		List<String> acked;
+	}
+
+	/**
+	 * Pending value of a field and the sequence number it was recorded with.
+	 */
+	private static class Pending
+	{
+		final Object value;
+
+		final long seq;
+
+		Pending(Object value, long seq)
+		{
+			this.value = value;
+			this.seq = seq;
+		}
+	}
+
+	/* Directory of the outbox file */
+	private final File dir;
+
+	private final File file;
+
+	/* Name of the local gimp, the only one whose fields are recorded */
+	private final String localName;
+
+	private final Gson gson;
+
+	/* Gimp name => field => pending value, guarded by this */
+	private final Map<String, Map<String, Pending>> pending = new LinkedHashMap<>();
+
+	/* Lines appended since the file was last compacted, guarded by this */
+	private int appended = 0;
+
+	/* Whether the outbox was closed, after which nothing more is written, guarded by this */
+	private boolean closed = false;
+
+	/* Performs all file I/O after loading, in submission order */
+	private final ExecutorService io = Executors.newSingleThreadExecutor();
+
+	/* Only touched on the I/O thread */
+	private BufferedWriter writer;
+
+	public GimOutbox(String groupName, String localName, Gson gson)
+	{
+		this(OUTBOX_DIR, groupName, localName, gson);
+	}
+
+	GimOutbox(File dir, String groupName, String localName, Gson gson)
+	{
+		this.dir = dir;
+		this.localName = localName;
+		this.gson = gson;
+		file = new File(dir, "outbox-" + URLEncoder.encode(groupName, StandardCharsets.UTF_8)
+			+ "-" + URLEncoder.encode(localName, StandardCharsets.UTF_8) + ".jsonl");
+		load();
+	}
+
+	/**
+	 * Reads back whatever was pending when the outbox was last closed,
+	 * then compacts the file.
+	 */
+	private synchronized void load()
+	{
+		if (file.isFile())
+		{
+			try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					try
+					{
+						apply(gson.fromJson(line, Entry.class));
+					}
+					catch (JsonParseException e)
+					{
+						// Most likely a line torn by a crash, the rest are still good
+						log.debug("Skipping unreadable outbox line");
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				log.warn("Failed to read outbox", e);
+			}
+		}
+		compact();
+	}
+
+	private void apply(Entry entry)
+	{
+		if (entry == null || entry.name == null)
+		{
+			return;
+		}
+		if (entry.fields != null)
+		{
+			final Map<String, Pending> fields = pending.computeIfAbsent(entry.name, k -> new HashMap<>());
+			entry.fields.forEach((key, value) -> fields.put(key, new Pending(value, entry.seq)));
+		}
+		if (entry.acked != null)
+		{
+			final Map<String, Pending> fields = pending.get(entry.name);
+			if (fields == null)
+			{
+				return;
+			}
+			for (String key : entry.acked)
+			{
+				final Pending field = fields.get(key);
+				// Only the value that was sent is acked, not a newer one recorded since
+				if (field != null && field.seq <= entry.seq)
+				{
+					fields.remove(key);
+				}
+			}
+			if (fields.isEmpty())
+			{
+				pending.remove(entry.name);
+			}
+		}
+	}
+
+	/**
+	 * Records the durable fields of broadcast data about to be sent.
+	 *
+	 * @param data stamped gimp data
+	 * @param name gimp name
+	 * @param seq  sequence number the data is sent with
+	 * @return whether the data has any durable fields
+	 */
+	public synchronized boolean record(Map<String, Object> data, String name, long seq)
+	{
+		final Map<String, Object> fields = getDurableFields(data);
+		if (fields.isEmpty() || !localName.equals(name))
+		{
+			return false;
+		}
+		final Entry entry = new Entry();
+		entry.name = name;
+		entry.seq = seq;
+		entry.fields = fields;
+		apply(entry);
+		append(entry);
+		return true;
+	}
+
+	/**
+	 * Acks the durable fields of broadcast data the server has received.
+	 *
+	 * @param keys keys of the received data
+	 * @param name gimp name
+	 * @param seq  sequence number the data was sent with
+	 */
+	public synchronized void ack(Collection<String> keys, String name, long seq)
+	{
+		final Map<String, Pending> fields = pending.get(name);
+		if (fields == null)
+		{
+			return;
+		}
+		final List<String> acked = new ArrayList<>();
+		for (String key : keys)
+		{
+			if (fields.containsKey(key))
+			{
+				acked.add(key);
+			}
+		}
+		if (acked.isEmpty())
+		{
+			return;
+		}
+		final Entry entry = new Entry();
+		entry.name = name;
+		entry.seq = seq;
+		entry.acked = acked;
+		apply(entry);
+		append(entry);
+	}
+
+	/**
+	 * Gets everything still pending as broadcast data, one message per gimp
+	 * and sequence number, so each field is replayed with the version it
+	 * was recorded with.
+	 *
+	 * @return pending gimp data, including each message's sequence number
+	 */
+	public synchronized List<Map<String, Object>> getPending()
+	{
+		final List<Map<String, Object>> messages = new ArrayList<>();
+		pending.forEach((name, fields) -> {
+			final Map<Long, Map<String, Object>> bySeq = new HashMap<>();
+			fields.forEach((key, field) -> bySeq.computeIfAbsent(field.seq, seq -> {
+				final Map<String, Object> data = new HashMap<>();
+				data.put("name", name);
+				data.put("seq", seq);
+				messages.add(data);
+				return data;
+			}).put(key, field.value));
+		});
+		return messages;
+	}
+
+	/**
+	 * Gets the newest sequence number of any pending field.
+	 *
+	 * @return newest pending sequence number, 0 if none
+	 */
+	public synchronized long getLastSeq()
+	{
+		long lastSeq = 0;
+		for (Map<String, Pending> fields : pending.values())
+		{
+			for (Pending field : fields.values())
+			{
+				lastSeq = Math.max(lastSeq, field.seq);
+			}
+		}
+		return lastSeq;
+	}
+
+	public synchronized boolean isEmpty()
+	{
+		return pending.isEmpty();
+	}
+
+	static Map<String, Object> getDurableFields(Map<String, Object> data)
+	{
+		final Map<String, Object> fields = new HashMap<>();
+		for (String key : DURABLE_KEYS)
+		{
+			// A missing value isn't worth replaying
+			final Object value = data.get(key);
+			if (value != null)
+			{
+				fields.put(key, value);
+			}
+		}
+		return fields;
+	}
+
+	private void append(Entry entry)
+	{
+		if (closed)
+		{
+			return;
+		}
+		if (appended >= COMPACT_THRESHOLD)
+		{
+			compact();
+			return;
+		}
+		final String line = gson.toJson(entry);
+		appended++;
+		io.execute(() -> writeLine(line));
+	}
+
+	private void writeLine(String line)
+	{
+		try
+		{
+			if (writer == null)
+			{
+				Files.createDirectories(dir.toPath());
+				writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			writer.write(line);
+			writer.newLine();
+			writer.flush();
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to append to outbox", e);
+		}
+	}
+
+	/**
+	 * Rewrites the file with only the pending values, or deletes it if
+	 * nothing is pending. The lines are taken now and written later.
+	 */
+	private void compact()
+	{
+		if (closed)
+		{
+			return;
+		}
+		appended = 0;
+		final List<String> lines = new ArrayList<>();
+		pending.forEach((name, fields) -> fields.forEach((key, field) -> {
+			final Entry entry = new Entry();
+			entry.name = name;
+			entry.seq = field.seq;
+			entry.fields = Map.of(key, field.value);
+			lines.add(gson.toJson(entry));
+		}));
+		io.execute(() -> rewrite(lines));
+	}
+
+	/**
+	 * Replaces the file with the given lines atomically.
+	 *
+	 * @param lines lines to write, none to delete the file
+	 */
+	private void rewrite(List<String> lines)
+	{
+		closeWriter();
+		try
+		{
+			if (lines.isEmpty())
+			{
+				Files.deleteIfExists(file.toPath());
+				return;
+			}
+			Files.createDirectories(dir.toPath());
+			final File tmp = new File(dir, file.getName() + ".tmp");
+			Files.write(tmp.toPath(), lines, StandardCharsets.UTF_8);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to compact outbox", e);
+		}
+	}
+
+	private void closeWriter()
+	{
+		if (writer == null)
+		{
+			return;
+		}
+		try
+		{
+			writer.close();
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to close outbox", e);
+		}
+		writer = null;
+	}
+
+	/**
+	 * Finishes any pending writes in the background, then closes the file.
+	 * Nothing is recorded after this.
+	 */
+	public synchronized void close()
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		io.execute(this::closeWriter);
+		io.shutdown();
+	}
+
+	/**
+	 * Waits for the writes of a closed outbox to finish.
+	 *
+	 * @param timeout maximum time to wait in milliseconds
+	 * @return whether the writes finished in time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	boolean awaitClose(long timeout) throws InterruptedException
+	{
+		return io.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+	}
+}
@@ -24,16 +24,19 @@
  */
 package com.gimp;
 
+import com.gimp.gimps.GimDelta;
 import com.gimp.gimps.GimLocation;
 import com.gimp.gimps.GimPlayer;
 import com.gimp.gimps.Group;
+import com.gimp.gimps.events.GimGhostModeChanged;
+import com.gimp.gimps.events.GimLocationChanged;
+import com.gimp.gimps.events.GimWorldChanged;
 import com.gimp.map.GimWorldMapPoint;
 import com.gimp.map.GimWorldMapPointManager;
 import com.gimp.tasks.Task;
 import com.gimp.tasks.TaskManager;
 import com.google.gson.Gson;
 import com.google.inject.Provides;
-import io.socket.emitter.Emitter;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
@@ -41,11 +44,15 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import javax.inject.Inject;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
 import net.runelite.api.clan.ClanChannel;
+import net.runelite.api.clan.ClanChannelMember;
 import net.runelite.api.clan.ClanID;
 import net.runelite.api.coords.LocalPoint;
 import net.runelite.api.coords.WorldPoint;
@@ -58,6 +65,7 @@ import net.runelite.api.widgets.Widget;
 import net.runelite.client.RuneLite;
 import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
+import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.externalplugins.ExternalPluginManager;
@@ -71,7 +79,6 @@ import net.runelite.client.ui.NavigationButton;
 import net.runelite.client.ui.overlay.OverlayManager;
 import net.runelite.client.util.ImageUtil;
 import okhttp3.OkHttpClient;
-import org.json.JSONObject;
 
 @Slf4j
 @PluginDescriptor(name = "GIMP")
@@ -79,6 +86,12 @@ public class GimPlugin extends Plugin
 {
 	public final static int OFFLINE_WORLD = 0;
 	private final static int MAP_POINT_TICK_PERIOD = 300;
+	private final static int PRESENCE_RECONCILE_TICKS = 50;
+	/* How long to wait for the server to resume the session before resyncing in full */
+	private final static long RESUME_TIMEOUT = 5000;
+	/* Fields that change often enough to poll for, notes are fetched when shown instead */
+	private final static int HOT_FIELDS = (1 << GimPlayer.HP) | (1 << GimPlayer.MAX_HP) | (1 << GimPlayer.PRAYER)
+		| (1 << GimPlayer.MAX_PRAYER) | (1 << GimPlayer.GHOST_MODE) | (1 << GimPlayer.LOCATION) | (1 << GimPlayer.LAST_ACTIVITY);
 
 	@Inject
 	private TaskManager taskManager;
@@ -96,6 +109,9 @@ public class GimPlugin extends Plugin
 	@Inject
 	private KeyManager keyManager;
 
+	@Inject
+	private EventBus eventBus;
+
 	@Inject
 	private OkHttpClient okHttpClient;
 
@@ -110,7 +126,8 @@ public class GimPlugin extends Plugin
 	@Getter
 	private Group group;
 
-	private WorldPoint playerLocationCache = null;
+	/* Packed location of the local player, cached on game tick */
+	private volatile int playerLocationCache = GimLocation.NONE;
 
 	@Inject
 	private Gson gson;
@@ -123,10 +140,29 @@ public class GimPlugin extends Plugin
 
 	private boolean pingHotkeyPressed = false;
 
+	/* Game ticks since presence was last reconciled against the clan channel */
+	private int presenceTicks = 0;
+
+	/* Whether a world hop is in progress, during which the session is kept alive */
+	private boolean hopping = false;
+
+	/* Bitmask of gimp ordinals whose map point visibility needs refreshing */
+	private final AtomicInteger mapPointChanges = new AtomicInteger();
+
 	@Inject
 	private GimWorldMapPointManager gimWorldMapPointManager;
 
-	private GimBroadcastManager gimBroadcastManager;
+	@Inject
+	private GimLatencyTracker gimLatencyTracker;
+
+	/* Only set while the broadcast is running */
+	private volatile GimBroadcastManager gimBroadcastManager;
+
+	/* Stamps outbound broadcasts, outlives the broadcast manager so it never goes backwards */
+	final private GimClock gimClock = new GimClock();
+
+	/* Reused for every socket broadcast, which are all delivered on the socket's event thread */
+	final private GimDelta broadcastDelta = new GimDelta();
 
 	private GimPluginPanel panel;
 
@@ -140,40 +176,77 @@ public class GimPlugin extends Plugin
 	 */
 	private boolean frameToggle;
 
-	final private Emitter.Listener onBroadcastConnect = new Emitter.Listener()
+	final private Runnable onBroadcastConnect = new Runnable()
 	{
 		@Override
-		public void call(Object... args)
+		public void run()
 		{
 			// Set connection status to connected
 			panel.setConnectionStatus(true);
 		}
 	};
 
-	final private Emitter.Listener onBroadcastDisconnect = new Emitter.Listener()
+	final private Runnable onBroadcastDisconnect = new Runnable()
 	{
 		@Override
-		public void call(Object... args)
+		public void run()
 		{
 			// Set connection status to disconnected
 			panel.setConnectionStatus(false);
 		}
 	};
 
-	final private Emitter.Listener onBroadcastReconnect = new Emitter.Listener()
+	final private Runnable onBroadcastReconnect = new Runnable()
 	{
 		@Override
-		public void call(Object... args)
+		public void run()
 		{
+			// Update panel connection status
+			clientThread.invoke(() -> panel.setConnectionStatus(true));
+			final GimBroadcastManager manager = gimBroadcastManager;
+			if (manager == null)
+			{
+				return;
+			}
+			// If the session resumed, the server only sent what we missed and we have nothing to resend
+			manager.getSessionResume().orTimeout(RESUME_TIMEOUT, TimeUnit.MILLISECONDS).whenComplete((snapshot, ex) -> {
+				if (ex == null && !snapshot)
+				{
+					return;
+				}
+				clientThread.invoke(() -> {
+					// Update local gimp, then send out broadcast once it's applied
+					group.localUpdate(playerLocationCache).thenAccept(localGimp -> {
+						if (localGimp != null)
+						{
+							broadcastUpdate(localGimp.getGimpData());
+						}
+					});
+					// The server couldn't resume, so ping for all gimp data
+					if (ex != null)
+					{
+						pingForUpdate(false, GimBroadcastManager.ALL_FIELDS);
+					}
+				});
+			});
+		}
+	};
+
+	final private Runnable onBroadcastMigrate = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			// The new server may not have shared state with the old one, so
+			// send it everything we have and fetch everything it has
 			clientThread.invoke(() -> {
-				// Update panel connection status
-				panel.setConnectionStatus(true);
-				// Update local gimp
-				group.localUpdate(playerLocationCache);
-				// Send out broadcast
-				broadcastUpdate(group.getLocalGimp().getGimpData());
-				// Ping for initial gimp data
-				pingForUpdate(false);
+				group.localUpdate(playerLocationCache).thenAccept(localGimp -> {
+					if (localGimp != null)
+					{
+						broadcastUpdate(localGimp.getGimpData());
+					}
+				});
+				pingForUpdate(false, GimBroadcastManager.ALL_FIELDS);
 			});
 		}
 	};
@@ -197,6 +270,7 @@ public class GimPlugin extends Plugin
 	protected void startUp()
 	{
 		log.debug("GIMP started!");
+		group.start();
 		// Add the panel to the sidebar
 		addPanel();
 		// If logged into ironman account, load gimp data and start broadcasting
@@ -223,11 +297,23 @@ public class GimPlugin extends Plugin
 		overlayManager.remove(gimPingOverlay);
 		unload();
 		removePanel();
+		group.shutdown();
 	}
 
 	private void load()
 	{
+		// Show the state saved by the last session right away, it is reconciled as live data arrives
+		group.warmStart(client.getAccountHash()).thenAccept(warm -> {
+			if (warm)
+			{
+				// Restored gimps already have locations, which no change event reports
+				markAllMapPointsChanged();
+				panel.load();
+			}
+		});
 		group.load().whenCompleteAsync((result, ex) -> {
+			markAllMapPointsChanged();
+			clientThread.invoke(group::reconcilePresence);
 			panel.load();
 			startBroadcast();
 		});
@@ -246,12 +332,50 @@ public class GimPlugin extends Plugin
 	@Subscribe
 	public void onGameStateChanged(GameStateChanged gameStateChanged)
 	{
-		// If game state changes to the login screen or hopping, or connection is lost, stop the broadcast
+		// If game state changes to the login screen or connection is lost, stop the broadcast
 		GameState gameState = gameStateChanged.getGameState();
-		if (gameState == GameState.LOGIN_SCREEN || gameState == GameState.HOPPING || gameState == GameState.CONNECTION_LOST)
+		// Keep the session alive while hopping, since the account can't change
+		if (gameState == GameState.HOPPING)
+		{
+			hopping = true;
+			return;
+		}
+		// Any change other than loading means the logged in account may change
+		if (gameState != GameState.LOGGED_IN && gameState != GameState.LOADING && !hopping)
 		{
+			group.invalidateLocalGimp();
+		}
+		if (gameState == GameState.LOGIN_SCREEN || gameState == GameState.CONNECTION_LOST)
+		{
+			hopping = false;
 			unload();
 		}
+		else if (gameState == GameState.LOGGED_IN && hopping)
+		{
+			hopping = false;
+			onHopped();
+		}
+	}
+
+	/**
+	 * Pushes the new world once a world hop completes, so the group sees it
+	 * without waiting on the clan channel. The connection, group, map points
+	 * and panel were kept through the hop, and the rest of the local gimp's
+	 * state is the same on any world.
+	 */
+	private void onHopped()
+	{
+		log.debug("World hop complete");
+		group.reconcilePresence();
+		final GimPlayer localGimp = group.getLocalGimp();
+		// Gimps in ghost mode show as offline, so there's no world to share
+		if (gimBroadcastManager == null || localGimp == null || config.ghostMode())
+		{
+			return;
+		}
+		final Map<String, Object> worldData = localGimp.getData();
+		worldData.put("world", client.getWorld());
+		broadcastUpdate(worldData);
 	}
 
 	@Subscribe
@@ -264,6 +388,12 @@ public class GimPlugin extends Plugin
 			ClanChannel gimClanChannel = client.getClanChannel(ClanID.GROUP_IRONMAN);
 			if (changedClanChannel == gimClanChannel)
 			{
+				group.reconcilePresence();
+				// Rejoining the channel after a hop, so the session is still loaded
+				if (hopping || (gimBroadcastManager != null && group.getLocalGimp() != null))
+				{
+					return;
+				}
 				String gimClanChannelName = gimClanChannel.getName();
 				log.debug("GIM clan joined: {}", gimClanChannelName);
 				// Once group is loaded, we can display panel and start the broadcast
@@ -272,6 +402,25 @@ public class GimPlugin extends Plugin
 		}
 	}
 
+	@Subscribe
+	public void onClanMemberJoined(ClanMemberJoined clanMemberJoined)
+	{
+		if (clanMemberJoined.getClanChannel() == client.getClanChannel(ClanID.GROUP_IRONMAN))
+		{
+			ClanChannelMember member = clanMemberJoined.getClanMember();
+			group.updatePresence(member.getName(), member.getWorld());
+		}
+	}
+
+	@Subscribe
+	public void onClanMemberLeft(ClanMemberLeft clanMemberLeft)
+	{
+		if (clanMemberLeft.getClanChannel() == client.getClanChannel(ClanID.GROUP_IRONMAN))
+		{
+			group.updatePresence(clanMemberLeft.getClanMember().getName(), OFFLINE_WORLD);
+		}
+	}
+
 	@Subscribe
 	public void onGameTick(GameTick gameTick)
 	{
@@ -293,29 +442,53 @@ public class GimPlugin extends Plugin
 			}
 			// Cache player location on game tick (we update on another thread)
 			Player lp = client.getLocalPlayer();
-			playerLocationCache = lp.getWorldLocation();
 			if (client.getVarbitValue(VarbitID.SAILING_BOARDED_BOAT) == 1)
 			{
 				playerLocationCache = fromSailingLocal(lp.getLocalLocation());
 			}
+			else
+			{
+				playerLocationCache = GimLocation.pack(lp.getWorldLocation());
+			}
+			// Presence is tracked from clan member events, but every so often
+			// reconcile it with the clan channel in case an event was missed
+			if (++presenceTicks >= PRESENCE_RECONCILE_TICKS)
+			{
+				presenceTicks = 0;
+				group.reconcilePresence();
+			}
 			// If any gimp world / online status has changed, update
+			final int presenceChanges = group.pollPresenceChanges();
+			if (presenceChanges == 0)
+			{
+				return;
+			}
 			for (GimPlayer gimp : group.getGimps())
 			{
-				final int currentWorld = group.getCurrentWorld(gimp.getName());
+				if ((presenceChanges & (1 << gimp.getOrdinal())) == 0)
+				{
+					continue;
+				}
+				final int currentWorld = group.getPresenceWorld(gimp);
 				final int lastWorld = gimp.getWorld();
 				if (currentWorld != lastWorld)
 				{
 					updateWorld(gimp, currentWorld);
-					// If logging in or out, update last activity panel text
-					if (currentWorld == OFFLINE_WORLD || lastWorld == OFFLINE_WORLD)
-					{
-						panel.setLastActivity(gimp.getName(), gimp.getLastActivity(), currentWorld);
-					}
 				}
 			}
 		}
 	}
 
+	@Subscribe
+	public void onBeforeRender(BeforeRender beforeRender)
+	{
+		// Apply all updates received since the last frame as a single batch
+		if (group.hasPendingUpdates())
+		{
+			group.flushUpdates();
+		}
+	}
+
 	@Subscribe
 	public void onStatChanged(StatChanged statChanged)
 	{
@@ -359,20 +532,31 @@ public class GimPlugin extends Plugin
 		String CONFIG_GROUP = "gimp";
 		String SERVER_ADDRESS_KEY = "serverAddress";
 		String GHOST_MODE = "ghostMode";
+		String SHOW_SELF = "showSelf";
 		// Check if one of GIMP's server address config value has changed
 		if (configChanged.getGroup().equals(CONFIG_GROUP) && configChanged.getKey().equals(SERVER_ADDRESS_KEY))
 		{
-			if (gimBroadcastManager != null && gimBroadcastManager.isSocketConnected())
+			final GimBroadcastManager manager = gimBroadcastManager;
+			if (manager != null)
 			{
-				// If socket is currently connected, disconnect and let it reconnect with new address
-				log.debug("Server address changed, disconnecting socket client");
-				gimBroadcastManager.disconnectSocketClient();
+				// Connect to the new address before leaving the old one, so the group never sees us freeze
+				log.debug("Server address changed, migrating socket client");
+				manager.invalidateEndpoints();
+				manager.migrate();
 			}
 		}
 		else if (configChanged.getGroup().equals(CONFIG_GROUP) && configChanged.getKey().equals(GHOST_MODE))
 		{
 			updateGhostMode(config.ghostMode());
 		}
+		else if (configChanged.getGroup().equals(CONFIG_GROUP) && configChanged.getKey().equals(SHOW_SELF))
+		{
+			GimPlayer localGimp = group.getLocalGimp();
+			if (localGimp != null)
+			{
+				markMapPointChanged(localGimp);
+			}
+		}
 	}
 
 	@Subscribe
@@ -418,6 +602,32 @@ public class GimPlugin extends Plugin
 		onTilePing(group.getLocalGimp(), tilePing);
 	}
 
+	@Subscribe
+	public void onGimLocationChanged(GimLocationChanged gimLocationChanged)
+	{
+		// Map point visibility only depends on whether there is a location at all
+		if (gimLocationChanged.getOldLocation() == GimLocation.NONE || gimLocationChanged.getLocation() == GimLocation.NONE)
+		{
+			markMapPointChanged(gimLocationChanged.getGimp());
+		}
+	}
+
+	@Subscribe
+	public void onGimWorldChanged(GimWorldChanged gimWorldChanged)
+	{
+		// Map point visibility only depends on whether the gimp is online
+		if ((gimWorldChanged.getOldWorld() == OFFLINE_WORLD) != (gimWorldChanged.getWorld() == OFFLINE_WORLD))
+		{
+			markMapPointChanged(gimWorldChanged.getGimp());
+		}
+	}
+
+	@Subscribe
+	public void onGimGhostModeChanged(GimGhostModeChanged gimGhostModeChanged)
+	{
+		markMapPointChanged(gimGhostModeChanged.getGimp());
+	}
+
 	public void onTilePing(GimPlayer gimp, TilePing tilePing)
 	{
 		// If pings are enabled, show the ping on canvas
@@ -445,6 +655,8 @@ public class GimPlugin extends Plugin
 	{
 		// Panel must be injected this way to avoid UI inconsistencies
 		panel = injector.getInstance(GimPluginPanel.class);
+		// Panel renders gimp state from change events
+		eventBus.register(panel);
 		final BufferedImage icon = ImageUtil.loadImageResource(getClass(), "gimpoint-small.png");
 		// This is pretty arbitrary, but currently places the nav button at
 		// the bottom of the list if there are no third-party plugin panels
@@ -455,6 +667,7 @@ public class GimPlugin extends Plugin
 
 	private void removePanel()
 	{
+		eventBus.unregister(panel);
 		clientToolbar.removeNavigation(navButton);
 	}
 
@@ -473,13 +686,15 @@ public class GimPlugin extends Plugin
 			gimBroadcastManager.disconnectSocketClient();
 		}
 		log.debug("Starting broadcast...");
-		gimBroadcastManager = new GimBroadcastManager(group.getName(), okHttpClient, config, gson);
+		gimBroadcastManager = new GimBroadcastManager(group.getName(), group.getLocalGimp().getName(), okHttpClient, config, gson, gimClock, gimLatencyTracker);
+		gimBroadcastManager.enableSessionResume(group::getLastSeen, gimpData -> handleServerUpdate(gimpData, false));
+		gimBroadcastManager.enableCompression(group::getNames);
 		gimBroadcastManager.connectSocketClient();
 		setConnectionListeners(false);
 		// Send out initial broadcast
 		broadcastUpdate(group.getLocalGimp().getGimpData());
 		// Ping for initial gimp data
-		pingForUpdate(true);
+		pingForUpdate(true, GimBroadcastManager.ALL_FIELDS);
 		// Start listening for server broadcast
 		listenForBroadcast();
 		// Start interval-based broadcast tasks
@@ -494,12 +709,13 @@ public class GimPlugin extends Plugin
 	 */
 	private void setConnectionListeners(boolean onReconnect)
 	{
-		Emitter.Listener onConnect = onReconnect ? onBroadcastReconnect : onBroadcastConnect;
+		Runnable onConnect = onReconnect ? onBroadcastReconnect : onBroadcastConnect;
 		gimBroadcastManager.onBroadcastConnect(onConnect);
 		// Use disconnect handler for connect error event b/c we just
 		// want to set connection status to disconnected
 		gimBroadcastManager.onBroadcastConnectError(onBroadcastDisconnect);
 		gimBroadcastManager.onBroadcastDisconnect(onBroadcastDisconnect);
+		gimBroadcastManager.onBroadcastMigrate(onBroadcastMigrate);
 	}
 
 	/**
@@ -508,15 +724,27 @@ public class GimPlugin extends Plugin
 	 */
 	private void listenForBroadcast()
 	{
-		gimBroadcastManager.listen(new Emitter.Listener()
+		final GimBroadcastManager manager = gimBroadcastManager;
+		manager.listen(new Consumer<String>()
 		{
 			@Override
-			public void call(Object... args)
+			public void accept(String dataJson)
 			{
-				JSONObject dataJson = (JSONObject) args[0];
-				log.debug(dataJson.toString());
-				GimPlayer gimpData = gimBroadcastManager.parseBroadcastData(dataJson.toString());
-				handleUpdate(gimpData);
+				log.debug(dataJson);
+				// Datagrams arrive on their own thread, alongside the socket's
+				synchronized (broadcastDelta)
+				{
+					try
+					{
+						manager.parseBroadcastData(dataJson, broadcastDelta);
+					}
+					catch (Exception e)
+					{
+						log.error("Broadcast parse error: {}", String.valueOf(e));
+						return;
+					}
+					handleUpdate(broadcastDelta);
+				}
 			}
 		});
 	}
@@ -543,6 +771,7 @@ public class GimPlugin extends Plugin
 						gimBroadcastManager.connectSocketClient();
 						setConnectionListeners(true);
 					}
+					gimBroadcastManager.maintainDatagrams();
 				}
 			};
 			Task locationBroadcastTask = new Task(FIVE_SECONDS)
@@ -553,14 +782,13 @@ public class GimPlugin extends Plugin
 					final GimPlayer localGimp = group.getLocalGimp();
 					if (localGimp != null)
 					{
-						GimLocation gimLocation = new GimLocation(playerLocationCache);
-						GimLocation lastLocation = localGimp.getLocation();
-						// Don't update location if it hasn't changed
-						if (lastLocation != null && GimLocation.compare(lastLocation, gimLocation))
+						final int location = playerLocationCache;
+						// Don't update location if it's unknown or hasn't changed
+						if (location == GimLocation.NONE || location == localGimp.getLocation())
 						{
 							return;
 						}
-						updateLocation(gimLocation);
+						updateLocation(location);
 					}
 				}
 
@@ -582,7 +810,7 @@ public class GimPlugin extends Plugin
 					// If socket is not connected, fetch data (instead of waiting for broadcast)
 					if (!gimBroadcastManager.isSocketConnected())
 					{
-						pingForUpdate(false);
+						pingForUpdate(false, HOT_FIELDS);
 					}
 				}
 
@@ -611,15 +839,20 @@ public class GimPlugin extends Plugin
 				public void run()
 				{
 					frameToggle = !frameToggle;
-					for (GimPlayer gimp : group.getGimps())
+					final int changes = mapPointChanges.getAndSet(0);
+					// Read a single snapshot so every map point moves against the same state
+					for (GimPlayer gimp : group.getSnapshot().getGimps())
 					{
 						if (gimp != null)
 						{
-							refreshMapPointVisibility(gimp);
+							if ((changes & (1 << gimp.getOrdinal())) != 0)
+							{
+								refreshMapPointVisibility(gimp);
+							}
 							if (gimWorldMapPointManager.hasPoint(gimp.getName()))
 							{
 								final GimWorldMapPoint gimWorldMapPoint = gimWorldMapPointManager.getPoint(gimp.getName());
-								final boolean moved = gimWorldMapPoint.moveTowardPlayer(frameToggle);
+								final boolean moved = gimWorldMapPoint.moveTowardPlayer(gimp, frameToggle);
 								if (moved)
 								{
 									gimWorldMapPoint.addFootstep(gimWorldMapPointManager, config.showFootsteps());
@@ -629,14 +862,35 @@ public class GimPlugin extends Plugin
 					}
 				}
 			};
+			Task latencyReportTask = new Task(FIVE_SECONDS * 12)
+			{
+				@Override
+				public void run()
+				{
+					if (gimLatencyTracker.isEnabled())
+					{
+						gimLatencyTracker.logSummary();
+					}
+				}
+			};
+			Task endpointProbeTask = new Task(FIVE_SECONDS * 6)
+			{
+				@Override
+				public void run()
+				{
+					gimBroadcastManager.probeEndpoints();
+				}
+			};
 			taskManager.schedule(locationBroadcastTask, 0);
 			taskManager.schedule(httpFallbackPingTask, FIVE_SECONDS / 2);
 			taskManager.schedule(socketConnectTask, FIVE_SECONDS * 2);
 			taskManager.schedule(tickMapPoints, 0);
+			taskManager.schedule(latencyReportTask, FIVE_SECONDS * 12);
+			taskManager.schedule(endpointProbeTask, 0);
 		}
 	}
 
-	private WorldPoint fromSailingLocal(LocalPoint point)
+	private int fromSailingLocal(LocalPoint point)
 	{
 		Scene scene = client.getTopLevelWorldView().getScene();
 		Iterator<? extends WorldEntity> wei = client.getTopLevelWorldView().worldEntities().iterator();
@@ -650,7 +904,7 @@ public class GimPlugin extends Plugin
 				break;
 			}
 		}
-		return new WorldPoint(
+		return GimLocation.pack(
 			(boat_point.getX() >> Perspective.LOCAL_COORD_BITS) + scene.getBaseX(),
 			(boat_point.getY() >> Perspective.LOCAL_COORD_BITS) + scene.getBaseY(),
 			-1);
@@ -664,44 +918,73 @@ public class GimPlugin extends Plugin
 	 */
 	private void broadcastUpdate(Map<String, Object> gimpData)
 	{
-		if (gimBroadcastManager != null)
+		final GimBroadcastManager manager = gimBroadcastManager;
+		if (manager != null)
 		{
-			gimBroadcastManager.broadcast(gimpData);
+			manager.broadcast(gimpData);
 		}
 	}
 
 	/**
-	 * Sends a ping via HTTP or socket for all server gimp data, handling the
+	 * Sends a ping via HTTP or socket for server gimp data, handling the
 	 * result asynchronously. Sent when the broadcast starts and as a fallback
 	 * if the socket disconnects.
+	 *
+	 * @param initial whether this is the first ping since the broadcast started
+	 * @param fields  bitmask of GimPlayer field indices to request
+	 */
+	private void pingForUpdate(boolean initial, int fields)
+	{
+		final GimBroadcastManager manager = gimBroadcastManager;
+		if (manager == null)
+		{
+			return;
+		}
+		manager.ping(fields, gimpData -> handleServerUpdate(gimpData, initial));
+	}
+
+	/**
+	 * Fetches the notes of the group when a gimp's notes are about to be shown,
+	 * unless they are already known and kept fresh by socket broadcasts. The
+	 * fallback ping doesn't poll for notes.
+	 *
+	 * @param gimp GimPlayer whose notes are shown
+	 */
+	public void fetchNotes(GimPlayer gimp)
+	{
+		if (gimBroadcastManager == null || (gimp.has(GimPlayer.NOTES) && gimBroadcastManager.isSocketConnected()))
+		{
+			return;
+		}
+		pingForUpdate(false, 1 << GimPlayer.NOTES);
+	}
+
+	/**
+	 * Handles gimp data sent by the server in reply to a ping or session resume.
+	 *
+	 * @param gimpData inbound gimp data, copied so it can be reused
+	 * @param initial  whether the data is the first received for the local gimp
 	 */
-	private void pingForUpdate(boolean initial)
+	private void handleServerUpdate(GimDelta gimpData, boolean initial)
 	{
-		gimBroadcastManager.ping().whenCompleteAsync((result, ex) -> {
-			if (result != null)
+		final GimPlayer gimp = group.getGimp(gimpData.getName());
+		if (gimp == null)
+		{
+			return;
+		}
+		// We can ignore all incoming updates to the local player except for the
+		// initial one, which might be necessary for hydrating certain properties
+		if (group.isLocalGimp(gimp))
+		{
+			if (initial)
 			{
-				for (GimPlayer gimp : group.getGimps())
-				{
-					GimPlayer gimpData = result.get(gimp.getName());
-					if (gimpData != null)
-					{
-						// We can ignore all incoming updates to the local player except for the
-						// initial one, which might be necessary for hydrating certain properties
-						if (gimp == group.getLocalGimp())
-						{
-							if (initial)
-							{
-								handleInitialLocalUpdate(gimpData);
-							}
-						}
-						else
-						{
-							handleUpdate(gimpData);
-						}
-					}
-				}
+				handleInitialLocalUpdate(gimpData);
 			}
-		});
+		}
+		else
+		{
+			handleUpdate(gimpData);
+		}
 	}
 
 	/**
@@ -716,6 +999,9 @@ public class GimPlugin extends Plugin
 		{
 			gimBroadcastManager.stopListening();
 			gimBroadcastManager.disconnectSocketClient();
+			gimBroadcastManager.shutdown();
+			// The session is over, so nothing may reach the manager anymore
+			gimBroadcastManager = null;
 		}
 	}
 
@@ -723,49 +1009,51 @@ public class GimPlugin extends Plugin
 
 	/**
 	 * Handles an initial update to the local player, hydrating specific
-	 * gimp data and calling other update functionality.
+	 * gimp data.
 	 *
-	 * @param gimpData GimPlayer data
+	 * @param gimpData inbound gimp data
 	 */
-	private void handleInitialLocalUpdate(GimPlayer gimpData)
+	private void handleInitialLocalUpdate(GimDelta gimpData)
 	{
 		GimPlayer localGimp = group.getLocalGimp();
 		if (localGimp != null)
 		{
+			// Never stamp broadcasts older than the ones from our last session
+			gimClock.observe(gimpData.getSeq());
 			group.localHydrate(gimpData);
-			onUpdate(gimpData);
 		}
 	}
 
 	/**
-	 * Handles a normal update from the server, mapping gimp data to the
-	 * corresponding gimp and calling other update functionality.
+	 * Handles a normal update from the server, queueing gimp data to be
+	 * merged and applied to the corresponding gimp on the next frame.
 	 *
-	 * @param gimpData GimPlayer data
+	 * @param gimpData inbound gimp data, copied so it can be reused
 	 */
-	private void handleUpdate(GimPlayer gimpData)
-	{
-		group.update(gimpData);
-		onUpdate(gimpData);
-	}
-
-	private void onUpdate(GimPlayer gimpData)
+	private void handleUpdate(GimDelta gimpData)
 	{
-		panel.updateGimpData(gimpData);
-		if (gimpData.getNotes() != null)
+		gimpData.setReceivedAt(System.currentTimeMillis());
+		if (gimLatencyTracker.isEnabled())
 		{
-			panel.setNotes(gimpData.getName(), gimpData.getNotes());
+			gimLatencyTracker.recordReceive(gimpData);
 		}
+		// Tile pings are one-off events rather than state, so don't hold them back
 		if (gimpData.getTilePing() != null)
 		{
 			GimPlayer gimp = group.getGimp(gimpData.getName());
-			onTilePing(gimp, gimpData.getTilePing());
+			if (gimp != null)
+			{
+				onTilePing(gimp, gimpData.getTilePing());
+			}
 		}
-		if (gimpData.getGhostMode() != null && gimpData.getGhostMode())
+		// A hop reaches us before the clan channel catches up, so take the new world right away
+		if (gimpData.getWorld() != OFFLINE_WORLD && gimpData.getName() != null)
 		{
-			GimPlayer gimp = group.getGimp(gimpData.getName());
-			updateWorld(gimp, OFFLINE_WORLD);
+			final String name = gimpData.getName();
+			final int world = gimpData.getWorld();
+			clientThread.invoke(() -> group.updatePresence(name, world));
 		}
+		group.enqueueUpdate(gimpData);
 	}
 
 	/**
@@ -780,8 +1068,7 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set it locally first, to prevent loops
-			localGimp.setHp(hp);
-			panel.updateGimpData(localGimp);
+			group.setHp(localGimp.getName(), hp);
 			// Broadcast new HP value
 			Map<String, Object> hpData = localGimp.getData();
 			hpData.put("hp", hp);
@@ -801,8 +1088,7 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set it locally first, to prevent loops
-			localGimp.setMaxHp(maxHp);
-			panel.updateGimpData(localGimp);
+			group.setMaxHp(localGimp.getName(), maxHp);
 			// Broadcast new max HP value
 			Map<String, Object> hpData = localGimp.getData();
 			hpData.put("maxHp", maxHp);
@@ -822,8 +1108,7 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set it locally first, to prevent loops
-			localGimp.setPrayer(prayer);
-			panel.updateGimpData(localGimp);
+			group.setPrayer(localGimp.getName(), prayer);
 			// Broadcast new prayer value
 			Map<String, Object> prayerData = localGimp.getData();
 			prayerData.put("prayer", prayer);
@@ -843,8 +1128,7 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set it locally first, to prevent loops
-			localGimp.setMaxPrayer(maxPrayer);
-			panel.updateGimpData(localGimp);
+			group.setMaxPrayer(localGimp.getName(), maxPrayer);
 			// Broadcast new max prayer value
 			Map<String, Object> prayerData = localGimp.getData();
 			prayerData.put("maxPrayer", maxPrayer);
@@ -853,16 +1137,15 @@ public class GimPlugin extends Plugin
 	}
 
 	/**
-	 * Updates the world of provided GimPlayer, and sets the last activity
-	 * since it is dependent on online status (world == 0).
+	 * Updates the world of provided GimPlayer. The panel picks up the
+	 * change, including the online-dependent last activity text, from
+	 * the resulting {@link GimWorldChanged} event.
 	 *
 	 * @param world world number of GimPlayer
 	 */
 	private void updateWorld(GimPlayer gimp, int world)
 	{
 		group.setWorld(gimp.getName(), world);
-		panel.setWorld(gimp.getName(), world);
-		panel.setLastActivity(gimp.getName(), gimp.getLastActivity(), world);
 	}
 
 	/**
@@ -878,10 +1161,15 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set new ghost mode locally before broadcast
-			group.setGhostMode(localGimp.getName(), ghostMode);
-			Map<String, Object> ghostModeData = ghostMode ? localGimp.getData() : localGimp.getGimpData(); // if ghostMode off, broadcast all data
-			ghostModeData.put("ghostMode", ghostMode);
-			broadcastUpdate(ghostModeData);
+			group.setGhostMode(localGimp.getName(), ghostMode).thenAccept(gimp -> {
+				if (gimp == null)
+				{
+					return;
+				}
+				Map<String, Object> ghostModeData = ghostMode ? gimp.getData() : gimp.getGimpData(); // if ghostMode off, broadcast all data
+				ghostModeData.put("ghostMode", ghostMode);
+				broadcastUpdate(ghostModeData);
+			});
 		}
 	}
 
@@ -889,21 +1177,20 @@ public class GimPlugin extends Plugin
 	 * Updates the local gimp location and broadcasts the change
 	 * if ghost mode is not enabled.
 	 *
-	 * @param gimLocation world location of local GimPlayer
+	 * @param location packed world location of local GimPlayer
 	 */
-	private void updateLocation(GimLocation gimLocation)
+	private void updateLocation(int location)
 	{
 		GimPlayer localGimp = group.getLocalGimp();
 		if (localGimp != null)
 		{
 			// Set location locally before broadcast
-			group.setLocation(localGimp.getName(), gimLocation);
-			panel.updateGimpData(localGimp);
+			group.setLocation(localGimp.getName(), location);
 			// Do not broadcast location at all if ghost mode is active
 			if (!config.ghostMode())
 			{
 				Map<String, Object> data = localGimp.getData();
-				data.put("location", gimLocation.getLocation());
+				data.put("location", GimLocation.toData(location));
 				broadcastUpdate(data);
 			}
 		}
@@ -915,8 +1202,7 @@ public class GimPlugin extends Plugin
 		if (localGimp != null)
 		{
 			// Set activity locally before broadcast
-			localGimp.setLastActivity(activity);
-			panel.updateGimpData(localGimp);
+			group.setLastActivity(localGimp.getName(), activity);
 			Map<String, Object> activityData = localGimp.getData();
 			activityData.put("lastActivity", activity);
 			broadcastUpdate(activityData);
@@ -934,7 +1220,7 @@ public class GimPlugin extends Plugin
 		GimPlayer localGimp = group.getLocalGimp();
 		if (localGimp != null)
 		{
-			localGimp.setNotes(notes);
+			group.setNotes(localGimp.getName(), notes);
 			// Set the notes data in the config as a fallback
 			config.notesData(notes);
 			Map<String, Object> notesData = localGimp.getData();
@@ -943,6 +1229,26 @@ public class GimPlugin extends Plugin
 		}
 	}
 
+	/**
+	 * Flags the given player's map point visibility for a refresh on the
+	 * next map point tick.
+	 *
+	 * @param gimp the player whose map point is to be refreshed
+	 */
+	private void markMapPointChanged(GimPlayer gimp)
+	{
+		mapPointChanges.updateAndGet(changes -> changes | (1 << gimp.getOrdinal()));
+	}
+
+	/**
+	 * Flags every player's map point visibility for a refresh, since a
+	 * whole group published at once posts no change events.
+	 */
+	private void markAllMapPointsChanged()
+	{
+		mapPointChanges.set(-1);
+	}
+
 	/**
 	 * Determine if the given player's world map point should be displayed or not,
 	 * then either add or remove it accordingly.
@@ -952,10 +1258,10 @@ public class GimPlugin extends Plugin
 	private void refreshMapPointVisibility(GimPlayer gimp)
 	{
 		final String name = gimp.getName();
-		final boolean isLocalGimp = gimp == group.getLocalGimp();
+		final boolean isLocalGimp = group.isLocalGimp(gimp);
 		final boolean shouldShow =
 			// Condition 1: Player must have a location
-			gimp.getLocation() != null
+			gimp.getLocation() != GimLocation.NONE
 				// Condition 2: Must be another player (unless "show self" is on)
 				&& (!isLocalGimp || config.showSelf())
 				// Condition 3: Must not be in ghost mode (unless it's the local player)
@@ -24,11 +24,14 @@
  */
 package com.gimp;
 
+import com.gimp.requests.Transport;
 import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
 import net.runelite.client.config.ConfigSection;
 import net.runelite.client.config.Keybind;
+import net.runelite.client.config.Range;
+import net.runelite.client.config.Units;
 
 @ConfigGroup("gimp")
 public interface GimPluginConfig extends Config
@@ -37,7 +40,8 @@ public interface GimPluginConfig extends Config
 		position = 0,
 		keyName = "serverAddress",
 		name = "Server Address",
-		description = "Address of the remote GIMP server, check the GitHub for a public server address"
+		description = "Address of the remote GIMP server, check the GitHub for a public server address. "
+			+ "List several separated by commas to use the fastest one that's up"
 	)
 	default String serverAddress()
 	{
@@ -120,6 +124,119 @@ public interface GimPluginConfig extends Config
 		return false;
 	}
 
+	@ConfigItem(
+		position = 8,
+		section = developerSection,
+		keyName = "hiscoresPrefetchInterval",
+		name = "Hiscores Prefetch Interval",
+		description = "Minimum time between background hiscore lookups for your fellow gimps"
+	)
+	@Units(Units.SECONDS)
+	@Range(min = 1)
+	default int hiscoresPrefetchInterval()
+	{
+		return 3;
+	}
+
+	@ConfigItem(
+		position = 9,
+		section = developerSection,
+		keyName = "latencyTracing",
+		name = "Latency Tracing",
+		description = "Periodically log how long updates from your fellow gimps take to arrive and render"
+	)
+	default boolean latencyTracing()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		position = 10,
+		section = developerSection,
+		keyName = "transport",
+		name = "Transport",
+		description = "Protocol for the live connection to the server, WebSocket falls back to Socket.IO if the server doesn't support it"
+	)
+	default Transport transport()
+	{
+		return Transport.SOCKET_IO;
+	}
+
+	@ConfigItem(
+		position = 11,
+		section = developerSection,
+		keyName = "datagramPort",
+		name = "UDP Port",
+		description = "Server port for sending location and HP over UDP, 0 to disable"
+	)
+	@Range(max = 65535)
+	default int datagramPort()
+	{
+		return 0;
+	}
+
+	@ConfigItem(
+		position = 12,
+		section = developerSection,
+		keyName = "hedgePings",
+		name = "Hedge Pings",
+		description = "If several server addresses are listed, also send slow pings to the next fastest server"
+	)
+	default boolean hedgePings()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		position = 13,
+		section = developerSection,
+		keyName = "localRelay",
+		name = "Local Relay",
+		description = "Share one server connection between all clients on this machine, the first one started connects for the rest"
+	)
+	default boolean localRelay()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		position = 14,
+		section = developerSection,
+		keyName = "relayPort",
+		name = "Local Relay Port",
+		description = "Loopback port the local relay is hosted on, must be the same for every client"
+	)
+	@Range(min = 1024, max = 65535)
+	default int relayPort()
+	{
+		return 47370;
+	}
+
+	@ConfigItem(
+		position = 15,
+		section = developerSection,
+		keyName = "lanPeers",
+		name = "LAN Peers",
+		description = "Exchange updates directly with group members on the local network, and only with them if no server address is set"
+	)
+	default boolean lanPeers()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		position = 16,
+		section = developerSection,
+		keyName = "lanPort",
+		name = "LAN Port",
+		description = "UDP port for finding group members on the local network, must be the same for every member"
+	)
+	@Range(min = 1024, max = 65535)
+	default int lanPort()
+	{
+		return 47371;
+	}
+
 	@ConfigItem(
 		keyName = "notesData",
 		name = "",
@@ -25,6 +25,11 @@
 package com.gimp;
 
 import com.gimp.gimps.*;
+import com.gimp.gimps.events.GimActivityChanged;
+import com.gimp.gimps.events.GimHpChanged;
+import com.gimp.gimps.events.GimNotesChanged;
+import com.gimp.gimps.events.GimPrayerChanged;
+import com.gimp.gimps.events.GimWorldChanged;
 import com.gimp.ui.GimNotes;
 import com.gimp.ui.GimTab;
 import com.gimp.ui.GimTabGroup;
@@ -42,6 +47,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import com.google.inject.Inject;
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
@@ -57,6 +63,7 @@ import net.runelite.api.Client;
 import net.runelite.api.Experience;
 import net.runelite.api.Player;
 import net.runelite.api.gameval.SpriteID;
+import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.game.SpriteManager;
 import net.runelite.api.clan.ClanChannel;
 import net.runelite.api.clan.ClanID;
@@ -131,6 +138,8 @@ public class GimPluginPanel extends PluginPanel
 
 	private final Group group;
 
+	private final GimPlugin plugin;
+
 	@Inject
 	private Client client;
 
@@ -167,8 +176,8 @@ public class GimPluginPanel extends PluginPanel
 	/* The currently selected gimp */
 	private String selectedGimp;
 
-	/* Used to prevent users from switching gimp tabs while the results are loading */
-	private boolean loading = false;
+	/* Pending hiscores lookup for the selected gimp, cancelled once superseded */
+	private CompletableFuture<HiscoreResult> hiscoresLookup;
 
 	static
 	{
@@ -181,6 +190,7 @@ public class GimPluginPanel extends PluginPanel
 	@Inject
 	public GimPluginPanel(GimPlugin plugin, SpriteManager spriteManager)
 	{
+		this.plugin = plugin;
 		this.group = plugin.getGroup();
 		this.gimNotes.init(plugin);
 		this.spriteManager = spriteManager;
@@ -235,11 +245,6 @@ public class GimPluginPanel extends PluginPanel
 					}
 					tab.setToolTipText(username);
 					tab.setOnSelectEvent(() -> {
-						if (loading)
-						{
-							return false;
-						}
-
 						selectedGimp = username;
 						// Removes focus border from refresh button on tab select
 						tab.requestFocus();
@@ -252,11 +257,7 @@ public class GimPluginPanel extends PluginPanel
 						@Override
 						public void mousePressed(MouseEvent mouseEvent)
 						{
-							if (loading)
-							{
-								return;
-							}
-							loadGimpData();
+							loadGimpData(false);
 						}
 					});
 					// Set tab of local gimp, if none is defined yet will default to first
@@ -323,7 +324,7 @@ public class GimPluginPanel extends PluginPanel
 
 				// Create button to refresh gimp data
 				refreshButton.addActionListener((e) -> {
-					loadGimpData();
+					loadGimpData(true);
 				});
 				container.add(refreshButton, c);
 				c.gridy++;
@@ -339,7 +340,7 @@ public class GimPluginPanel extends PluginPanel
 				repaint();
 
 				// Load gimp data into panel
-				loadGimpData();
+				loadGimpData(false);
 			});
 		}
 		catch (Exception e)
@@ -552,7 +553,13 @@ public class GimPluginPanel extends PluginPanel
 		return notesPanel;
 	}
 
-	private void loadGimpData()
+	/**
+	 * Displays the selected gimp's data and hiscores. Cached hiscores are
+	 * shown immediately, and only looked up again if refreshing.
+	 *
+	 * @param refresh whether to look up hiscores even if they are cached
+	 */
+	private void loadGimpData(boolean refresh)
 	{
 		// If for some reason no tab was selected, default to normal
 		if (selectedGimp == null)
@@ -566,19 +573,31 @@ public class GimPluginPanel extends PluginPanel
 		ClanChannel gimClanChannel = client.getClanChannel(ClanID.GROUP_IRONMAN);
 		if (gimClanChannel == null)
 		{
-			loading = false;
 			return;
 		}
 
-		loading = true;
-
 		// Display gimp data
 		GimPlayer gimp = group.getGimp(gimpName);
+		if (gimp == null)
+		{
+			return;
+		}
+		// Notes aren't polled for, so make sure they're up to date when shown
+		plugin.fetchNotes(gimp);
+		final HiscoreResult cachedResult = group.getCachedHiscores(gimpName);
 		SwingUtilities.invokeLater(() -> {
 			// Apply gimp data to panel
 			applyGimpData(gimp);
 
-			// Reinitialize hiscore data table
+			// Render cached hiscores right away if we have them, expired ones are refreshed below
+			if (cachedResult != null)
+			{
+				fillGimpStatusData(gimp, cachedResult);
+				applyHiscoreResult(cachedResult);
+				return;
+			}
+
+			// Otherwise, reinitialize hiscore data table
 			for (Map.Entry<HiscoreSkill, JLabel> entry : skillLabels.entrySet())
 			{
 				HiscoreSkill skill = entry.getKey();
@@ -590,64 +609,88 @@ public class GimPluginPanel extends PluginPanel
 			}
 		});
 
-		// Do lengthy hiscores fetch on thread separate from EDT
-		new Thread(new Runnable()
+		if (cachedResult != null && !refresh && group.hasFreshHiscores(gimpName))
 		{
-			@Override
-			public void run()
+			// Nothing to look up, but still abandon the previous gimp's lookup
+			if (hiscoresLookup != null)
 			{
-				// Fetch gimp hiscores and apply to empty table
-				group.getHiscores(gimpName).whenCompleteAsync((result, ex) -> {
-					if (!gimpName.equals(selectedGimp))
-					{
-						// Selected gimp has changed in the meantime
-						return;
-					}
-
-					if (result == null)
-					{
-						loading = false;
-						return;
-					}
+				hiscoresLookup.cancel(true);
+				hiscoresLookup = null;
+			}
+			return;
+		}
 
-					// Successful player lookup
-					loading = false;
-					SwingUtilities.invokeLater(() -> {
-						fillGimpStatusData(gimp, result);
-						applyHiscoreResult(result);
-					});
-				});
+		// Start the new lookup before cancelling the previous one, so refreshing
+		// the same gimp joins its in-flight lookup instead of restarting it
+		final CompletableFuture<HiscoreResult> previousLookup = hiscoresLookup;
+		hiscoresLookup = group.getHiscores(gimpName);
+		if (previousLookup != null)
+		{
+			previousLookup.cancel(true);
+		}
+		// Fetch gimp hiscores and apply to empty table
+		hiscoresLookup.thenAccept((result) -> {
+			// Skip if the lookup failed or the selected gimp has changed in the meantime
+			if (result == null || !gimpName.equals(selectedGimp))
+			{
+				return;
 			}
-		}).start();
+			SwingUtilities.invokeLater(() -> {
+				fillGimpStatusData(gimp, result);
+				applyHiscoreResult(result);
+			});
+		});
 	}
 
-	public void updateGimpData(GimPlayer gimpData)
+	/* CHANGE EVENTS (posted from the group's writer thread) */
+
+	@Subscribe
+	public void onGimHpChanged(GimHpChanged gimHpChanged)
 	{
+		final GimPlayer gimp = gimHpChanged.getGimp();
 		SwingUtilities.invokeLater(() -> {
-			if (selectedGimp != null && selectedGimp.equals(gimpData.getName()))
-			{
-				GimPlayer gimp = group.getGimp(selectedGimp);
-				if (gimpData.getHp() != null || gimpData.getMaxHp() != null)
-				{
-					int hpValue = gimpData.getHp() != null ? gimpData.getHp() : gimp.getHp();
-					int maxHpValue = gimpData.getMaxHp() != null ? gimpData.getMaxHp() : gimp.getMaxHp();
-					setHpBar(selectedGimp, hpValue, maxHpValue);
-				}
-				if (gimpData.getPrayer() != null || gimpData.getMaxPrayer() != null)
-				{
-					int prayerValue = gimpData.getPrayer() != null ? gimpData.getPrayer() : gimp.getPrayer();
-					int maxPrayerValue = gimpData.getMaxPrayer() != null ? gimpData.getMaxPrayer() : gimp.getMaxPrayer();
-					setPrayerBar(selectedGimp, prayerValue, maxPrayerValue);
-				}
-				if (gimpData.getLastActivity() != null)
-				{
-					setLastActivity(selectedGimp, gimpData.getLastActivity(), gimp.getWorld());
-				}
-				// Update more gimp data...
-			}
+			setHpBar(gimp.getName(), gimHpChanged.getHp(), gimHpChanged.getMaxHp());
+			setStale(gimp.getName(), gimp.isStale());
+		});
+	}
+
+	@Subscribe
+	public void onGimPrayerChanged(GimPrayerChanged gimPrayerChanged)
+	{
+		final GimPlayer gimp = gimPrayerChanged.getGimp();
+		SwingUtilities.invokeLater(() -> {
+			setPrayerBar(gimp.getName(), gimPrayerChanged.getPrayer(), gimPrayerChanged.getMaxPrayer());
+			setStale(gimp.getName(), gimp.isStale());
+		});
+	}
+
+	@Subscribe
+	public void onGimWorldChanged(GimWorldChanged gimWorldChanged)
+	{
+		final GimPlayer gimp = gimWorldChanged.getGimp();
+		SwingUtilities.invokeLater(() -> {
+			setWorld(gimp.getName(), gimWorldChanged.getWorld());
+			// Last activity text depends on whether the gimp is online
+			setLastActivity(gimp.getName(), gimp.getLastActivity(), gimWorldChanged.getWorld());
+		});
+	}
+
+	@Subscribe
+	public void onGimActivityChanged(GimActivityChanged gimActivityChanged)
+	{
+		final GimPlayer gimp = gimActivityChanged.getGimp();
+		SwingUtilities.invokeLater(() -> {
+			setLastActivity(gimp.getName(), gimActivityChanged.getActivity(), gimp.getWorld());
+			setStale(gimp.getName(), gimp.isStale());
 		});
 	}
 
+	@Subscribe
+	public void onGimNotesChanged(GimNotesChanged gimNotesChanged)
+	{
+		SwingUtilities.invokeLater(() -> setNotes(gimNotesChanged.getGimp().getName(), gimNotesChanged.getNotes()));
+	}
+
 	public void setConnectionStatus(boolean status)
 	{
 		String statusText = status ? "Connected" : "Disconnected";
@@ -660,23 +703,23 @@ public class GimPluginPanel extends PluginPanel
 		connectionLabel.setToolTipText(openingTags + tooltipText + (status ? "" : " " + helpText) + closingTags);
 	}
 
-	public void setHpBar(String gimpName, Integer hp, Integer maxHp)
+	public void setHpBar(String gimpName, int hp, int maxHp)
 	{
 		if (selectedGimp != null && selectedGimp.equals(gimpName))
 		{
-			hpBar.setValue(formatStatusValue(hp));
-			hpBar.setMaximumValue(formatStatusValue(maxHp));
-			hpBar.setCenterLabel(formatStatusValue(hp) + "/" + formatStatusValue(maxHp));
+			hpBar.setValue(hp);
+			hpBar.setMaximumValue(maxHp);
+			hpBar.setCenterLabel(hp + "/" + maxHp);
 		}
 	}
 
-	public void setPrayerBar(String gimpName, Integer prayer, Integer maxPrayer)
+	public void setPrayerBar(String gimpName, int prayer, int maxPrayer)
 	{
 		if (selectedGimp != null && selectedGimp.equals(gimpName))
 		{
-			prayerBar.setValue(formatStatusValue(prayer));
-			prayerBar.setMaximumValue(formatStatusValue(maxPrayer));
-			prayerBar.setCenterLabel(formatStatusValue(prayer) + "/" + formatStatusValue(maxPrayer));
+			prayerBar.setValue(prayer);
+			prayerBar.setMaximumValue(maxPrayer);
+			prayerBar.setCenterLabel(prayer + "/" + maxPrayer);
 		}
 	}
 
@@ -719,6 +762,22 @@ public class GimPluginPanel extends PluginPanel
 		}
 	}
 
+	/**
+	 * Dims the username of a gimp whose state is still the last known one
+	 * from a previous session.
+	 *
+	 * @param gimpName GimPlayer name
+	 * @param stale    whether the displayed state is stale
+	 */
+	public void setStale(String gimpName, boolean stale)
+	{
+		if (selectedGimp != null && selectedGimp.equals(gimpName))
+		{
+			usernameLabel.setForeground(stale ? ColorScheme.LIGHT_GRAY_COLOR : Color.WHITE);
+			usernameLabel.setToolTipText(stale ? "Last known status, waiting for live data" : null);
+		}
+	}
+
 	public void setNotes(String gimpName, String notes)
 	{
 		if (selectedGimp != null && selectedGimp.equals(gimpName))
@@ -741,6 +800,7 @@ public class GimPluginPanel extends PluginPanel
 
 		String gimpName = gimp.getName();
 		usernameLabel.setText(gimpName);
+		setStale(gimpName, gimp.isStale());
 
 		setWorld(gimpName, group.getCurrentWorld(gimpName));
 		setHpBar(gimpName, gimp.getHp(), gimp.getMaxHp());
@@ -758,11 +818,11 @@ public class GimPluginPanel extends PluginPanel
 	{
 		assert SwingUtilities.isEventDispatchThread();
 
-		if (gimp.getMaxHp() == null)
+		if (!gimp.has(GimPlayer.MAX_HP))
 		{
 			setHpBar(gimp.getName(), gimp.getHp(), result.getSkill(HITPOINTS).getLevel());
 		}
-		if (gimp.getMaxPrayer() == null)
+		if (!gimp.has(GimPlayer.MAX_PRAYER))
 		{
 			setPrayerBar(gimp.getName(), gimp.getPrayer(), result.getSkill(PRAYER).getLevel());
 		}
@@ -1037,15 +1097,6 @@ public class GimPluginPanel extends PluginPanel
 		tabGroup.select(tabGroup.getTab(defaultTab));
 	}
 
-	private static int formatStatusValue(Integer statusValue)
-	{
-		if (statusValue == null)
-		{
-			return 0;
-		}
-		return statusValue;
-	}
-
 	private static String formatLevel(int level)
 	{
 		if (level < 10000)
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Token buckets that limit how often each class of message is broadcast,
+ * so a burst of stat changes or a server under load can't turn into a flood.
+ * A message's class is the single field it carries, or "full" for anything
+ * carrying several. The server can also ask for a pause, during which no
+ * class may send.
+ */
+public class GimRateLimiter
+{
+	static final String FULL_MESSAGE = "full";
+
+	/* Messages per second and burst size of classes without their own */
+	private static final Bucket DEFAULT_BUCKET = new Bucket(1, 3);
+
+	/* Messages per second and burst size, by message class */
+	private static final Map<String, Bucket> BUCKETS = Map.of(
+		"hp", new Bucket(2, 5),
+		"prayer", new Bucket(2, 5),
+		"location", new Bucket(1, 3),
+		"lastActivity", new Bucket(0.5, 2),
+		"notes", new Bucket(0.2, 2),
+		FULL_MESSAGE, new Bucket(0.2, 2)
+	);
+
+	/* Tokens left and when they were last refilled, by message class, guarded by this */
+	final private Map<String, double[]> tokens = new HashMap<>();
+
+	/* Local time until which the server asked us not to send */
+	private volatile long pausedUntil;
+
+	/**
+	 * Takes a token for a message of the given class if one is available.
+	 *
+	 * @param messageClass message class
+	 * @param now          current local time
+	 * @return 0 if the message may be sent, otherwise how long to wait before trying again
+	 */
+	public synchronized long tryAcquire(String messageClass, long now)
+	{
+		if (now < pausedUntil)
+		{
+			return pausedUntil - now;
+		}
+		final Bucket bucket = BUCKETS.getOrDefault(messageClass, DEFAULT_BUCKET);
+		final double[] state = tokens.computeIfAbsent(messageClass, k -> new double[]{bucket.burst, now});
+		state[0] = Math.min(bucket.burst, state[0] + (now - state[1]) * bucket.rate / 1000);
+		state[1] = now;
+		if (state[0] >= 1)
+		{
+			state[0] -= 1;
+			return 0;
+		}
+		return (long) Math.ceil((1 - state[0]) * 1000 / bucket.rate);
+	}
+
+	/**
+	 * Stops every class from sending for a while, e.g. when the server
+	 * replies with Retry-After. Never shortens an ongoing pause.
+	 *
+	 * @param delay how long to pause for, in ms
+	 * @param now   current local time
+	 */
+	public void pause(long delay, long now)
+	{
+		synchronized (this)
+		{
+			pausedUntil = Math.max(pausedUntil, now + delay);
+		}
+	}
+
+	/**
+	 * Checks if the server asked us not to send right now.
+	 *
+	 * @param now current local time
+	 * @return whether sending is paused
+	 */
+	public boolean isPaused(long now)
+	{
+		return now < pausedUntil;
+	}
+
+	/**
+	 * Gets the class of a message from its data keys, ignoring the keys every
+	 * message carries. Max HP and max prayer share the class of HP and prayer.
+	 *
+	 * @param data   message data
+	 * @param common keys every message carries
+	 * @return message class
+	 */
+	public static String getMessageClass(Map<String, Object> data, String... common)
+	{
+		String messageClass = null;
+		for (String key : data.keySet())
+		{
+			if (isCommon(key, common))
+			{
+				continue;
+			}
+			if (messageClass != null)
+			{
+				return FULL_MESSAGE;
+			}
+			messageClass = key;
+		}
+		if (messageClass == null)
+		{
+			return FULL_MESSAGE;
+		}
+		switch (messageClass)
+		{
+			case "maxHp":
+				return "hp";
+			case "maxPrayer":
+				return "prayer";
+			default:
+				return messageClass;
+		}
+	}
+
+	private static boolean isCommon(String key, String[] common)
+	{
+		for (String commonKey : common)
+		{
+			if (commonKey.equals(key))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class Bucket
+	{
+		final private double rate;
+
+		final private double burst;
+
+		Bucket(double rate, double burst)
+		{
+			this.rate = rate;
+			this.burst = burst;
+		}
+	}
+}
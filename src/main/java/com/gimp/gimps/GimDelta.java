@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.runelite.client.plugins.party.messages.TilePing;
+
+/**
+ * Mutable, reusable holder for inbound gimp data. Status values are stored as
+ * primitives, with a bitmask recording which fields the data actually contains,
+ * so a delta can be parsed into, merged and cleared without allocating.
+ */
+public class GimDelta
+{
+	@Getter
+	private String name;
+
+	/**
+	 * Sequence number the sender stamped this data with, 0 if unversioned.
+	 */
+	@Getter
+	private long seq;
+
+	/**
+	 * Server time the sender sent this data, 0 if unknown.
+	 */
+	@Setter
+	@Getter
+	private long sentAt;
+
+	/**
+	 * Server time the server relayed this data, 0 if unknown.
+	 */
+	@Setter
+	@Getter
+	private long serverTime;
+
+	/**
+	 * Local time this data was received, the earliest of any merged data.
+	 */
+	@Setter
+	@Getter
+	private long receivedAt;
+
+	/* Bitmask of the fields this data contains, by GimPlayer field index */
+	private int mask;
+
+	/* Version of each contained field, set on merge since merged fields can differ */
+	private final long[] versions = new long[GimPlayer.FIELD_COUNT];
+
+	@Getter
+	private int hp;
+
+	@Getter
+	private int maxHp;
+
+	@Getter
+	private int prayer;
+
+	@Getter
+	private int maxPrayer;
+
+	@Getter
+	private String notes;
+
+	@Getter
+	private boolean ghostMode;
+
+	/* Packed location, see GimLocation */
+	@Getter
+	private int location;
+
+	@Getter
+	private String lastActivity;
+
+	@Setter
+	@Getter
+	private TilePing tilePing;
+
+	/**
+	 * World the sender hopped to, 0 if the data doesn't say. Unversioned,
+	 * since the clan channel stays the source of truth for presence.
+	 */
+	@Setter
+	@Getter
+	private int world;
+
+	/**
+	 * Clears the delta so it can be reused for new data.
+	 */
+	public void clear()
+	{
+		name = null;
+		seq = 0;
+		sentAt = 0;
+		serverTime = 0;
+		receivedAt = 0;
+		mask = 0;
+		notes = null;
+		lastActivity = null;
+		tilePing = null;
+		world = 0;
+	}
+
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Sets the sequence number of the data, which is the version of every
+	 * field it contains.
+	 *
+	 * @param seq sequence number
+	 */
+	public void setSeq(long seq)
+	{
+		this.seq = seq;
+		for (int field = 0; field < GimPlayer.FIELD_COUNT; field++)
+		{
+			versions[field] = seq;
+		}
+	}
+
+	public boolean has(int field)
+	{
+		return (mask & (1 << field)) != 0;
+	}
+
+	public boolean isEmpty()
+	{
+		return mask == 0;
+	}
+
+	long getVersion(int field)
+	{
+		return versions[field];
+	}
+
+	private void put(int field, long version)
+	{
+		mask |= 1 << field;
+		versions[field] = version;
+	}
+
+	/**
+	 * Removes a field from the delta.
+	 *
+	 * @param field field index
+	 */
+	void remove(int field)
+	{
+		mask &= ~(1 << field);
+	}
+
+	public void setHp(int hp)
+	{
+		this.hp = hp;
+		put(GimPlayer.HP, seq);
+	}
+
+	public void setMaxHp(int maxHp)
+	{
+		this.maxHp = maxHp;
+		put(GimPlayer.MAX_HP, seq);
+	}
+
+	public void setPrayer(int prayer)
+	{
+		this.prayer = prayer;
+		put(GimPlayer.PRAYER, seq);
+	}
+
+	public void setMaxPrayer(int maxPrayer)
+	{
+		this.maxPrayer = maxPrayer;
+		put(GimPlayer.MAX_PRAYER, seq);
+	}
+
+	public void setNotes(String notes)
+	{
+		this.notes = notes;
+		put(GimPlayer.NOTES, seq);
+	}
+
+	public void setGhostMode(boolean ghostMode)
+	{
+		this.ghostMode = ghostMode;
+		put(GimPlayer.GHOST_MODE, seq);
+	}
+
+	public void setLocation(int location)
+	{
+		this.location = location;
+		put(GimPlayer.LOCATION, seq);
+	}
+
+	public void setLastActivity(String lastActivity)
+	{
+		this.lastActivity = lastActivity;
+		put(GimPlayer.LAST_ACTIVITY, seq);
+	}
+
+	/**
+	 * Merges other data into this delta, taking each field the other data
+	 * contains unless this delta holds a newer version of it. Unversioned
+	 * data always wins, to stay compatible with older senders and servers.
+	 *
+	 * @param newer data that arrived later
+	 */
+	void merge(GimDelta newer)
+	{
+		for (int field = 0; field < GimPlayer.FIELD_COUNT; field++)
+		{
+			if (!newer.has(field))
+			{
+				continue;
+			}
+			final long version = newer.versions[field];
+			if (has(field) && version != 0 && version <= versions[field])
+			{
+				continue;
+			}
+			put(field, version);
+			switch (field)
+			{
+				case GimPlayer.HP:
+					hp = newer.hp;
+					break;
+				case GimPlayer.MAX_HP:
+					maxHp = newer.maxHp;
+					break;
+				case GimPlayer.PRAYER:
+					prayer = newer.prayer;
+					break;
+				case GimPlayer.MAX_PRAYER:
+					maxPrayer = newer.maxPrayer;
+					break;
+				case GimPlayer.NOTES:
+					notes = newer.notes;
+					break;
+				case GimPlayer.GHOST_MODE:
+					ghostMode = newer.ghostMode;
+					break;
+				case GimPlayer.LOCATION:
+					location = newer.location;
+					break;
+				case GimPlayer.LAST_ACTIVITY:
+					lastActivity = newer.lastActivity;
+					break;
+			}
+		}
+		seq = Math.max(seq, newer.seq);
+		if (receivedAt == 0 || (newer.receivedAt != 0 && newer.receivedAt < receivedAt))
+		{
+			receivedAt = newer.receivedAt;
+		}
+	}
+}
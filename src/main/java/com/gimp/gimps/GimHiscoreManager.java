@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.hiscore.HiscoreEndpoint;
+import net.runelite.client.hiscore.HiscoreManager;
+import net.runelite.client.hiscore.HiscoreResult;
+
+/**
+ * Wrapper around the built-in {@link HiscoreManager}.
+ * Runs lookups on a small bounded executor and shares a single in-flight
+ * lookup between all concurrent requests for the same name. Successful
+ * results are cached so they can be rendered without waiting on a lookup,
+ * and looked up again once they have expired.
+ */
+@Slf4j
+@Singleton
+public class GimHiscoreManager
+{
+	private final static int LOOKUP_THREADS = 2;
+
+	private final static long MAX_PREFETCH_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+
+	/* How long a cached result is fresh, hiscores only change as the player gains XP */
+	private final static long CACHE_TTL = TimeUnit.MINUTES.toMillis(10);
+
+	@Inject
+	private HiscoreManager hiscoreManager;
+
+	/* Threads are replaced on start, since the manager outlives a disabled plugin */
+	private volatile ExecutorService executor = Executors.newFixedThreadPool(LOOKUP_THREADS);
+
+	/* In-flight lookups by name, removed once the lookup completes or is abandoned */
+	final private Map<String, Lookup> lookups = new ConcurrentHashMap<>();
+
+	/* Latest successful result by name, shared by the panel and prefetching */
+	final private Map<String, Cached> cache = new ConcurrentHashMap<>();
+
+	private volatile ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	/* The ongoing prefetch run, if any */
+	private Prefetch prefetch;
+
+	private static class Lookup
+	{
+		final CompletableFuture<HiscoreResult> result = new CompletableFuture<>();
+
+		/* Number of callers still waiting on this lookup, only modified inside map operations */
+		int waiters;
+
+		Future<?> task;
+	}
+
+	private static class Cached
+	{
+		final HiscoreResult result;
+
+		final long fetchedAt;
+
+		Cached(HiscoreResult result, long fetchedAt)
+		{
+			this.result = result;
+			this.fetchedAt = fetchedAt;
+		}
+	}
+
+	private static class Prefetch
+	{
+		final Deque<String> queue;
+
+		final long interval;
+
+		volatile boolean cancelled;
+
+		Future<?> task;
+
+		Prefetch(Deque<String> queue, long interval)
+		{
+			this.queue = queue;
+			this.interval = interval;
+		}
+	}
+
+	/**
+	 * Starts the lookup and prefetch threads if they were shut down.
+	 */
+	public synchronized void start()
+	{
+		if (executor.isShutdown())
+		{
+			executor = Executors.newFixedThreadPool(LOOKUP_THREADS);
+		}
+		if (scheduler.isShutdown())
+		{
+			scheduler = Executors.newSingleThreadScheduledExecutor();
+		}
+	}
+
+	/**
+	 * Cancels any prefetch and in-flight lookups, and shuts down their
+	 * threads.
+	 */
+	public synchronized void shutdown()
+	{
+		stopPrefetch();
+		scheduler.shutdownNow();
+		executor.shutdownNow();
+		// Queued lookups never run now, so don't let later callers join them
+		lookups.values().removeIf(lookup -> {
+			lookup.result.cancel(true);
+			return true;
+		});
+	}
+
+	/**
+	 * Gets the cached hiscores of a player, if any have been fetched,
+	 * even if they have expired.
+	 *
+	 * @param name GimPlayer name
+	 * @return cached player hiscores or null
+	 */
+	public HiscoreResult getCached(String name)
+	{
+		final Cached cached = cache.get(name);
+		return cached != null ? cached.result : null;
+	}
+
+	/**
+	 * Checks if the cached hiscores of a player are recent enough to not
+	 * look up again.
+	 *
+	 * @param name GimPlayer name
+	 * @return whether there are unexpired cached hiscores
+	 */
+	public boolean isFresh(String name)
+	{
+		final Cached cached = cache.get(name);
+		return cached != null && System.currentTimeMillis() - cached.fetchedAt < CACHE_TTL;
+	}
+
+	/**
+	 * Drops every cached result, e.g. once the group is unloaded.
+	 */
+	public void clearCache()
+	{
+		cache.clear();
+	}
+
+	/**
+	 * Fetches player hiscores, joining the in-flight lookup for the name if one
+	 * exists. Each caller gets its own future; cancelling it abandons the lookup
+	 * for that caller only, and the shared lookup is cancelled once no callers
+	 * are left waiting on it.
+	 *
+	 * @param name GimPlayer name
+	 * @return player hiscores result
+	 */
+	public CompletableFuture<HiscoreResult> lookup(String name)
+	{
+		final Lookup lookup = lookups.compute(name, (key, existing) -> {
+			// A finished lookup can linger if it completed before being stored, so replace it
+			Lookup l = existing != null && !existing.result.isDone() ? existing : submit(key);
+			l.waiters++;
+			return l;
+		});
+		final CompletableFuture<HiscoreResult> handle = lookup.result.thenApply(result -> result);
+		handle.whenComplete((result, ex) -> {
+			if (handle.isCancelled())
+			{
+				release(name, lookup);
+			}
+		});
+		return handle;
+	}
+
+	private Lookup submit(String name)
+	{
+		final Lookup lookup = new Lookup();
+		lookup.task = executor.submit(() -> {
+			try
+			{
+				HiscoreResult result = hiscoreManager.lookup(name, HiscoreEndpoint.NORMAL);
+				if (result == null)
+				{
+					log.warn("Could not find hiscore data for {}", name);
+				}
+				else
+				{
+					cache.put(name, new Cached(result, System.currentTimeMillis()));
+				}
+				lookup.result.complete(result);
+			}
+			catch (IOException e)
+			{
+				log.error("Error fetching hiscores: {}", String.valueOf(e));
+				lookup.result.completeExceptionally(e);
+			}
+			finally
+			{
+				lookups.remove(name, lookup);
+			}
+		});
+		return lookup;
+	}
+
+	/**
+	 * Drops a caller from an in-flight lookup, cancelling the lookup if
+	 * that caller was the last one waiting on it.
+	 */
+	private void release(String name, Lookup lookup)
+	{
+		lookups.computeIfPresent(name, (key, existing) -> {
+			if (existing != lookup || --existing.waiters > 0)
+			{
+				return existing;
+			}
+			log.debug("Cancelling superseded hiscores lookup for {}", name);
+			existing.task.cancel(true);
+			existing.result.cancel(true);
+			return null;
+		});
+	}
+
+	/**
+	 * Fetches the hiscores of every player without fresh cached ones in
+	 * the background, one at a time and spaced out by the given interval.
+	 * A failed lookup is retried after backing off, doubling the delay on
+	 * each failure. Replaces any ongoing prefetch.
+	 *
+	 * @param names    names of the players to prefetch
+	 * @param interval minimum duration in milliseconds between lookups
+	 */
+	public synchronized void prefetch(List<String> names, long interval)
+	{
+		stopPrefetch();
+		final Deque<String> queue = new ArrayDeque<>();
+		for (String name : names)
+		{
+			if (!isFresh(name))
+			{
+				queue.add(name);
+			}
+		}
+		log.debug("Prefetching hiscores for {} gimps", queue.size());
+		prefetch = new Prefetch(queue, interval);
+		schedulePrefetch(prefetch, 0);
+	}
+
+	/**
+	 * Cancels the ongoing prefetch, if any.
+	 */
+	public synchronized void stopPrefetch()
+	{
+		if (prefetch != null)
+		{
+			prefetch.cancelled = true;
+			if (prefetch.task != null)
+			{
+				prefetch.task.cancel(false);
+			}
+			prefetch = null;
+		}
+	}
+
+	private synchronized void schedulePrefetch(Prefetch run, long delay)
+	{
+		if (run.cancelled || run.queue.isEmpty())
+		{
+			return;
+		}
+		run.task = scheduler.schedule(() -> {
+			final String name = run.queue.peek();
+			lookup(name).whenComplete((result, ex) -> {
+				if (ex != null)
+				{
+					// Back off before retrying the same player
+					final long backoff = Math.min(Math.max(delay, run.interval) * 2, MAX_PREFETCH_BACKOFF);
+					log.debug("Hiscores prefetch for {} failed, retrying in {}ms", name, backoff);
+					schedulePrefetch(run, backoff);
+					return;
+				}
+				run.queue.poll();
+				schedulePrefetch(run, run.interval);
+			});
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+}
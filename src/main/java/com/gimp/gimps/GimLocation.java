@@ -24,16 +24,18 @@
  */
 package com.gimp.gimps;
 
-import lombok.Getter;
-import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.coords.WorldPoint;
 
 import java.util.HashMap;
 import java.util.Map;
 
-@Getter
-@Slf4j
-public class GimLocation
+/**
+ * Helpers for locations packed into a single int, so that locations can be
+ * stored, compared and passed around without allocating. Bits 0-13 hold the
+ * y coordinate, bits 14-27 the x coordinate and bits 28-30 the plane plus one,
+ * since a player on a boat has a plane of -1. {@link #NONE} means no location.
+ */
+public final class GimLocation
 {
 	public enum Coordinate
 	{
@@ -42,54 +44,76 @@ public class GimLocation
 		y
 	}
 
-	final int x;
+	public static final int NONE = -1;
+
+	private static final int COORD_BITS = 14;
+
+	private static final int COORD_MASK = (1 << COORD_BITS) - 1;
+
+	private GimLocation()
+	{
+	}
+
+	public static int pack(int x, int y, int plane)
+	{
+		return ((plane + 1) << (COORD_BITS * 2)) | ((x & COORD_MASK) << COORD_BITS) | (y & COORD_MASK);
+	}
+
+	public static int pack(WorldPoint worldPoint)
+	{
+		return pack(worldPoint.getX(), worldPoint.getY(), worldPoint.getPlane());
+	}
 
-	final int y;
+	public static int getX(int location)
+	{
+		return (location >>> COORD_BITS) & COORD_MASK;
+	}
 
-	final int plane;
+	public static int getY(int location)
+	{
+		return location & COORD_MASK;
+	}
 
-	public GimLocation(WorldPoint worldPoint)
+	public static int getPlane(int location)
 	{
-		x = worldPoint.getX();
-		y = worldPoint.getY();
-		plane = worldPoint.getPlane();
+		return (location >>> (COORD_BITS * 2)) - 1;
 	}
 
-	public GimLocation(int x, int y, int plane)
+	public static WorldPoint toWorldPoint(int location)
 	{
-		this.x = x;
-		this.y = y;
-		this.plane = plane;
+		return new WorldPoint(getX(location), getY(location), getPlane(location));
 	}
 
 	/**
-	 * Maps member coordinates x, y, and plane to HashMap.
+	 * Maps location coordinates x, y, and plane to HashMap, for broadcasts.
 	 *
+	 * @param location packed location
 	 * @return map: coordinateName => coordinateValue
 	 */
-	public Map<String, Integer> getLocation()
+	public static Map<String, Integer> toData(int location)
 	{
-		Map<String, Integer> location = new HashMap<>();
-		location.put(Coordinate.x.toString(), x);
-		location.put(Coordinate.y.toString(), y);
-		location.put(Coordinate.plane.toString(), plane);
-		return location;
+		Map<String, Integer> data = new HashMap<>();
+		data.put(Coordinate.x.name(), getX(location));
+		data.put(Coordinate.y.name(), getY(location));
+		data.put(Coordinate.plane.name(), getPlane(location));
+		return data;
 	}
 
-	public WorldPoint toWorldPoint()
-	{
-		return new WorldPoint(x, y, plane);
-	}
-
-	public double getDistanceTo(GimLocation other)
+	/**
+	 * Gets the distance between two locations in tiles, counting a diagonal
+	 * step as a single tile like the game does. Ignores the plane.
+	 *
+	 * @param from packed location
+	 * @param to   packed location
+	 * @return distance in tiles
+	 */
+	public static int tileDistance(int from, int to)
 	{
-		return Math.sqrt(Math.pow(other.x - x, 2) + Math.pow(other.y - y, 2));
+		return Math.max(Math.abs(getX(to) - getX(from)), Math.abs(getY(to) - getY(from)));
 	}
 
-	public static boolean compare(GimLocation loc1, GimLocation loc2)
+	public static boolean isSamePlane(int location1, int location2)
 	{
-		return (loc1.getX() == loc2.getX())
-			&& (loc1.getY() == loc2.getY())
-			&& (loc1.getPlane() == loc2.getPlane());
+		return getPlane(location1) == getPlane(location2);
 	}
 }
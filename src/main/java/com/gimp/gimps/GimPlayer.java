@@ -29,64 +29,85 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.hiscore.HiscoreResult;
-import net.runelite.client.plugins.party.messages.TilePing;
-import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * State of a single gimp. Instances held by a {@link GroupSnapshot} are shared
+ * between threads and must not be mutated; the {@link Group} mutates copies on
+ * its writer thread instead.
+ * <p>
+ * Status values are stored as primitives, with a bitmask recording which
+ * of them have been set. A value that was never set reads as 0 or null.
+ */
 @Slf4j
 public class GimPlayer
 {
+	/* Indices of the versioned fields, also their bits in the presence mask */
+	public static final int HP = 0;
+	public static final int MAX_HP = 1;
+	public static final int PRAYER = 2;
+	public static final int MAX_PRAYER = 3;
+	public static final int NOTES = 4;
+	public static final int GHOST_MODE = 5;
+	public static final int LOCATION = 6;
+	public static final int LAST_ACTIVITY = 7;
+	static final int FIELD_COUNT = 8;
+
 	@Getter
 	final private String name;
 
-	@Setter
+	/**
+	 * Slot of this player in the group, for array-backed per-gimp state.
+	 */
 	@Getter
-	private Integer hp;
+	final private int ordinal;
+
+	/* Bitmask of the fields that have been set, by field index */
+	private int present = (1 << GHOST_MODE) | (1 << LAST_ACTIVITY);
 
-	@Setter
 	@Getter
-	private Integer maxHp;
+	private int hp;
 
-	@Setter
 	@Getter
-	private Integer prayer;
+	private int maxHp;
 
-	@Setter
 	@Getter
-	private Integer maxPrayer;
+	private int prayer;
 
-	@Setter
 	@Getter
-	private HiscoreResult hiscores;
+	private int maxPrayer;
 
 	@Setter
 	@Getter
-	private String notes;
+	private HiscoreResult hiscores;
 
-	@Setter
 	@Getter
-	private TilePing tilePing;
+	private String notes;
 
 	@Setter
 	@Getter
-	private Integer world;
+	private int world;
 
-	@Nullable
+	/* Packed location, see GimLocation */
 	@Getter
-	private GimLocation location;
+	private int location = GimLocation.NONE;
 
-	@Setter
 	@Getter
-	private Boolean ghostMode = false;
+	private boolean ghostMode = false;
 
-	@Setter
 	@Getter
 	private String lastActivity = IN_GAME_ACTIVITY;
 
 	public static final String IN_GAME_ACTIVITY = "IN_GAME_ACTIVITY";
 
+	/**
+	 * Version of each field by index, i.e. the sequence number of the
+	 * data it was last applied from.
+	 */
+	private final long[] versions;
+
 	/**
 	 * Speed of this player in tiles per second.
 	 */
@@ -102,22 +123,179 @@ public class GimPlayer
 	@Getter
 	private final Color color;
 
+	/**
+	 * Whether this player's state was restored from a previous session and
+	 * no live data has been applied to it since.
+	 */
+	@Getter
+	private boolean stale = false;
+
 	@Inject
-	public GimPlayer(String name, int world, Color color)
+	public GimPlayer(String name, int ordinal, int world, Color color)
 	{
 		this.name = name;
+		this.ordinal = ordinal;
 		this.world = world;
 		this.color = color;
+		versions = new long[FIELD_COUNT];
+	}
+
+	/**
+	 * Creates a copy of another GimPlayer.
+	 *
+	 * @param other GimPlayer to copy
+	 */
+	GimPlayer(GimPlayer other)
+	{
+		name = other.name;
+		ordinal = other.ordinal;
+		present = other.present;
+		hp = other.hp;
+		maxHp = other.maxHp;
+		prayer = other.prayer;
+		maxPrayer = other.maxPrayer;
+		hiscores = other.hiscores;
+		notes = other.notes;
+		world = other.world;
+		location = other.location;
+		ghostMode = other.ghostMode;
+		lastActivity = other.lastActivity;
+		speed = other.speed;
+		locationTimestamp = other.locationTimestamp;
+		color = other.color;
+		versions = other.versions.clone();
+		stale = other.stale;
+	}
+
+	/**
+	 * Carries over the state of a previous instance of the same player, e.g.
+	 * restored from a previous session, keeping this player's ordinal, color,
+	 * world and hiscores.
+	 *
+	 * @param other GimPlayer to restore state from
+	 */
+	void restore(GimPlayer other)
+	{
+		present = other.present;
+		hp = other.hp;
+		maxHp = other.maxHp;
+		prayer = other.prayer;
+		maxPrayer = other.maxPrayer;
+		notes = other.notes;
+		location = other.location;
+		ghostMode = other.ghostMode;
+		lastActivity = other.lastActivity;
+		System.arraycopy(other.versions, 0, versions, 0, FIELD_COUNT);
+		stale = other.stale;
+	}
+
+	void setStale(boolean stale)
+	{
+		this.stale = stale;
+	}
+
+	/**
+	 * Checks whether a field has been set.
+	 *
+	 * @param field field index
+	 * @return whether the field is present
+	 */
+	public boolean has(int field)
+	{
+		return (present & (1 << field)) != 0;
+	}
+
+	public void setHp(int hp)
+	{
+		this.hp = hp;
+		present |= 1 << HP;
 	}
 
-	public void setLocation(GimLocation location)
+	public void setMaxHp(int maxHp)
+	{
+		this.maxHp = maxHp;
+		present |= 1 << MAX_HP;
+	}
+
+	public void setPrayer(int prayer)
+	{
+		this.prayer = prayer;
+		present |= 1 << PRAYER;
+	}
+
+	public void setMaxPrayer(int maxPrayer)
+	{
+		this.maxPrayer = maxPrayer;
+		present |= 1 << MAX_PRAYER;
+	}
+
+	public void setNotes(String notes)
+	{
+		this.notes = notes;
+		present |= 1 << NOTES;
+	}
+
+	public void setGhostMode(boolean ghostMode)
+	{
+		this.ghostMode = ghostMode;
+	}
+
+	public void setLastActivity(String lastActivity)
+	{
+		this.lastActivity = lastActivity;
+	}
+
+	/**
+	 * Checks whether a field at the given version is newer than this
+	 * player's, and if so, records it as the field's version. Unversioned
+	 * data always wins, to stay compatible with older senders and servers.
+	 *
+	 * @param field   field index
+	 * @param version version of the incoming field
+	 * @return whether the incoming field should be applied
+	 */
+	boolean acceptVersion(int field, long version)
+	{
+		if (version == 0)
+		{
+			return true;
+		}
+		if (version <= versions[field])
+		{
+			return false;
+		}
+		versions[field] = version;
+		return true;
+	}
+
+	long getVersion(int field)
+	{
+		return versions[field];
+	}
+
+	/**
+	 * Gets the newest sequence number any field was applied from.
+	 *
+	 * @return last seen sequence number, 0 if none
+	 */
+	public long getLastSeq()
+	{
+		long lastSeq = 0;
+		for (long version : versions)
+		{
+			lastSeq = Math.max(lastSeq, version);
+		}
+		return lastSeq;
+	}
+
+	public void setLocation(int location)
 	{
 		// Determine the "speed" of the player
-		if (this.location != null)
+		if (this.location != GimLocation.NONE)
 		{
 			final long millisSinceLastLocation = System.currentTimeMillis() - locationTimestamp;
-			final double distance = this.location.getDistanceTo(location);
-			if (this.location.plane != location.plane)
+			final int distance = GimLocation.tileDistance(this.location, location);
+			if (!GimLocation.isSamePlane(this.location, location))
 			{
 				// If switching between planes, keep the speed at zero
 				speed = 0;
@@ -128,8 +306,8 @@ public class GimPlayer
 				speed = distance * 1000.0 / millisSinceLastLocation;
 			}
 		}
-		// Set location to new GimLocation
 		this.location = location;
+		present |= 1 << LOCATION;
 		// Update timestamp
 		locationTimestamp = System.currentTimeMillis();
 	}
@@ -143,7 +321,7 @@ public class GimPlayer
 
 	public boolean shouldIncludeLocation()
 	{
-		return ghostMode == null || !ghostMode;
+		return !ghostMode;
 	}
 
 	/**
@@ -156,16 +334,28 @@ public class GimPlayer
 	{
 		Map<String, Object> gimpData = new HashMap<>();
 		gimpData.put("name", name);
-		gimpData.put("hp", hp);
-		gimpData.put("maxHp", maxHp);
-		gimpData.put("prayer", prayer);
-		gimpData.put("maxPrayer", maxPrayer);
+		if (has(HP))
+		{
+			gimpData.put("hp", hp);
+		}
+		if (has(MAX_HP))
+		{
+			gimpData.put("maxHp", maxHp);
+		}
+		if (has(PRAYER))
+		{
+			gimpData.put("prayer", prayer);
+		}
+		if (has(MAX_PRAYER))
+		{
+			gimpData.put("maxPrayer", maxPrayer);
+		}
 		gimpData.put("notes", notes);
 		gimpData.put("ghostMode", ghostMode);
 		// Don't get location if ghostMode is active
-		if (location != null && this.shouldIncludeLocation())
+		if (location != GimLocation.NONE && this.shouldIncludeLocation())
 		{
-			gimpData.put("location", location.getLocation());
+			gimpData.put("location", GimLocation.toData(location));
 		}
 		gimpData.put("lastActivity", lastActivity);
 		return gimpData;
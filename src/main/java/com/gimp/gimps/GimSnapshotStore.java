@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import javax.inject.Singleton;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+/**
+ * Persists the last known state of the group to a small binary file per
+ * account, so it can be rendered right after login instead of waiting on the
+ * clan, hiscores and the server. The file is written once on logout or
+ * shutdown, and read back in one go, so it is never held open.
+ * <p>
+ * Only state worth showing is kept: status values, location, world, last
+ * activity and the version of each field, so live data newer than the
+ * snapshot replaces it and older data doesn't. Notes are only kept for the
+ * local gimp, other members' notes stay on the server.
+ */
+@Slf4j
+@Singleton
+public class GimSnapshotStore
+{
+	private final static File SNAPSHOT_DIR = new File(RuneLite.RUNELITE_DIR, "gimp");
+
+	/* "GIMP" */
+	private final static int MAGIC = 0x47494D50;
+
+	private final static int FORMAT_VERSION = 1;
+
+	/* Upper bound on any string, to reject a corrupt file before allocating */
+	private final static int MAX_STRING_BYTES = 1 << 16;
+
+	/**
+	 * Group state read back from a snapshot file.
+	 */
+	@Value
+	public static class WarmGroup
+	{
+		String name;
+
+		long savedAt;
+
+		/* Restored GimPlayers by ordinal, all marked stale */
+		List<GimPlayer> gimps;
+	}
+
+	private static File getFile(long accountHash)
+	{
+		return new File(SNAPSHOT_DIR, "warm-" + accountHash + ".bin");
+	}
+
+	/**
+	 * Writes the state of the group, replacing the account's previous
+	 * snapshot atomically. Failures are logged and otherwise ignored.
+	 *
+	 * @param accountHash hash of the logged in account
+	 * @param groupName   name of the group
+	 * @param gimps       GimPlayers to save
+	 * @param localName   name of the local gimp, the only one whose notes are saved
+	 */
+	public void write(long accountHash, String groupName, List<GimPlayer> gimps, String localName)
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (DataOutputStream out = new DataOutputStream(bytes))
+		{
+			out.writeInt(MAGIC);
+			out.writeByte(FORMAT_VERSION);
+			out.writeLong(System.currentTimeMillis());
+			writeString(out, groupName);
+			out.writeByte(gimps.size());
+			for (GimPlayer gimp : gimps)
+			{
+				writeGimp(out, gimp, gimp.getName().equals(localName));
+			}
+		}
+		catch (IOException e)
+		{
+			// Can't happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		final File file = getFile(accountHash);
+		final File tmp = new File(SNAPSHOT_DIR, file.getName() + ".tmp");
+		try
+		{
+			Files.createDirectories(SNAPSHOT_DIR.toPath());
+			Files.write(tmp.toPath(), bytes.toByteArray());
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to save group snapshot", e);
+		}
+	}
+
+	private static void writeGimp(DataOutputStream out, GimPlayer gimp, boolean withNotes) throws IOException
+	{
+		writeString(out, gimp.getName());
+		out.writeShort(gimp.getWorld());
+		int present = 0;
+		for (int field = 0; field < GimPlayer.FIELD_COUNT; field++)
+		{
+			if (gimp.has(field))
+			{
+				present |= 1 << field;
+			}
+		}
+		if (!withNotes)
+		{
+			present &= ~(1 << GimPlayer.NOTES);
+		}
+		out.writeByte(present);
+		out.writeShort(gimp.getHp());
+		out.writeShort(gimp.getMaxHp());
+		out.writeShort(gimp.getPrayer());
+		out.writeShort(gimp.getMaxPrayer());
+		out.writeInt(gimp.getLocation());
+		out.writeBoolean(gimp.isGhostMode());
+		writeString(out, withNotes ? gimp.getNotes() : null);
+		writeString(out, gimp.getLastActivity());
+		for (int field = 0; field < GimPlayer.FIELD_COUNT; field++)
+		{
+			// Without its value, a version would only stop the real notes from being applied
+			out.writeLong(field == GimPlayer.NOTES && !withNotes ? 0 : gimp.getVersion(field));
+		}
+	}
+
+	/**
+	 * Reads the account's snapshot, if it has one.
+	 *
+	 * @param accountHash hash of the logged in account
+	 * @param colors      colors of the gimps by ordinal
+	 * @return warm group state, or null if there is no readable snapshot
+	 */
+	public WarmGroup read(long accountHash, Color[] colors)
+	{
+		final File file = getFile(accountHash);
+		if (!file.isFile())
+		{
+			return null;
+		}
+		try
+		{
+			// Read into the heap rather than mapping it, since a mapped file can't be replaced on Windows
+			final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			if (buffer.getInt() != MAGIC || buffer.get() != FORMAT_VERSION)
+			{
+				log.debug("Ignoring group snapshot in an unknown format");
+				return null;
+			}
+			final long savedAt = buffer.getLong();
+			final String groupName = readString(buffer);
+			final int count = buffer.get() & 0xFF;
+			if (count > colors.length)
+			{
+				return null;
+			}
+			final List<GimPlayer> gimps = new ArrayList<>(count);
+			for (int i = 0; i < count; i++)
+			{
+				gimps.add(readGimp(buffer, i, colors[i]));
+			}
+			return new WarmGroup(groupName, savedAt, gimps);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// A truncated or corrupt file just means a cold start
+			log.warn("Failed to read group snapshot", e);
+			return null;
+		}
+	}
+
+	private static GimPlayer readGimp(ByteBuffer buffer, int ordinal, Color color)
+	{
+		final String name = readString(buffer);
+		final int world = buffer.getShort() & 0xFFFF;
+		final int present = buffer.get() & 0xFF;
+		final int hp = buffer.getShort();
+		final int maxHp = buffer.getShort();
+		final int prayer = buffer.getShort();
+		final int maxPrayer = buffer.getShort();
+		final int location = buffer.getInt();
+		final boolean ghostMode = buffer.get() != 0;
+		final String notes = readString(buffer);
+		final String lastActivity = readString(buffer);
+		final GimPlayer gimp = new GimPlayer(name, ordinal, world, color);
+		if ((present & (1 << GimPlayer.HP)) != 0)
+		{
+			gimp.setHp(hp);
+		}
+		if ((present & (1 << GimPlayer.MAX_HP)) != 0)
+		{
+			gimp.setMaxHp(maxHp);
+		}
+		if ((present & (1 << GimPlayer.PRAYER)) != 0)
+		{
+			gimp.setPrayer(prayer);
+		}
+		if ((present & (1 << GimPlayer.MAX_PRAYER)) != 0)
+		{
+			gimp.setMaxPrayer(maxPrayer);
+		}
+		if ((present & (1 << GimPlayer.NOTES)) != 0)
+		{
+			gimp.setNotes(notes);
+		}
+		if ((present & (1 << GimPlayer.LOCATION)) != 0)
+		{
+			gimp.setLocation(location);
+		}
+		gimp.setGhostMode(ghostMode);
+		gimp.setLastActivity(lastActivity != null ? lastActivity : GimPlayer.IN_GAME_ACTIVITY);
+		for (int field = 0; field < GimPlayer.FIELD_COUNT; field++)
+		{
+			gimp.acceptVersion(field, buffer.getLong());
+		}
+		gimp.setStale(true);
+		return gimp;
+	}
+
+	/* Strings are length-prefixed UTF-8, with a length of -1 for null */
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer)
+	{
+		final int length = buffer.getInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		if (length > MAX_STRING_BYTES || length > buffer.remaining())
+		{
+			throw new IllegalStateException("Invalid string length " + length);
+		}
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
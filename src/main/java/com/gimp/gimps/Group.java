@@ -24,24 +24,35 @@
  */
 package com.gimp.gimps;
 
+import com.gimp.GimLatencyTracker;
 import com.gimp.GimPlugin;
 import com.gimp.GimPluginConfig;
+import com.gimp.gimps.events.GimActivityChanged;
+import com.gimp.gimps.events.GimGhostModeChanged;
+import com.gimp.gimps.events.GimHpChanged;
+import com.gimp.gimps.events.GimLocationChanged;
+import com.gimp.gimps.events.GimNotesChanged;
+import com.gimp.gimps.events.GimPrayerChanged;
+import com.gimp.gimps.events.GimWorldChanged;
 import java.awt.Color;
-import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
 import net.runelite.api.Player;
 import net.runelite.api.Skill;
 import net.runelite.api.clan.*;
-import net.runelite.api.coords.WorldPoint;
 import net.runelite.client.callback.ClientThread;
-import net.runelite.client.hiscore.HiscoreEndpoint;
-import net.runelite.client.hiscore.HiscoreManager;
+import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.hiscore.HiscoreResult;
 import net.runelite.client.ui.overlay.worldmap.WorldMapPointManager;
 import javax.inject.Inject;
@@ -49,14 +60,25 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+/**
+ * Holds the state of every gimp in the group. All mutations are serialized
+ * onto a single writer thread, which applies them to copies of the affected
+ * GimPlayers and publishes the result as a new immutable {@link GroupSnapshot}.
+ * Readers (the panel, overlay and map) read the latest snapshot without locking.
+ * <p>
+ * After each mutation, a typed change event is posted to the {@link EventBus}
+ * for every field that actually changed, so subscribers only do work for what
+ * they render. Events are posted from the writer thread.
+ */
 @Slf4j
 public class Group
 {
 	// TODO: Let the player choose their own color?
 	private final static Color[] GIMP_COLORS = new Color[]{new Color(48, 227, 192), new Color(241, 120, 68), new Color(78, 54, 236), new Color(239, 208, 21), new Color(201, 21, 217)};
 
+	/* Latest published state, only ever replaced by the writer thread */
 	@Getter
-	final private List<GimPlayer> gimps = new ArrayList<>();
+	private volatile GroupSnapshot snapshot = GroupSnapshot.EMPTY;
 
 	@Inject
 	private Client client;
@@ -71,15 +93,84 @@ public class Group
 	private WorldMapPointManager worldMapPointManager;
 
 	@Inject
-	private HiscoreManager hiscoreManager;
+	private GimHiscoreManager gimHiscoreManager;
+
+	@Inject
+	private EventBus eventBus;
+
+	@Inject
+	private GimLatencyTracker gimLatencyTracker;
+
+	@Inject
+	private GimSnapshotStore gimSnapshotStore;
 
 	@Getter
-	private boolean loaded = false;
+	private volatile boolean loaded = false;
 
 	@Getter
-	private String name;
+	private volatile String name;
+
+	/* Hash of the account the group was loaded for, kept to save the group on logout */
+	private volatile long accountHash = -1;
+
+	/* Name of the local gimp once resolved, kept to save the group on logout */
+	private volatile String localName;
+
+	/* Threads are replaced on start, since the group outlives a disabled plugin */
+	private volatile ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 
-	final private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	/* The single writer of group state */
+	private volatile ExecutorService writer = Executors.newSingleThreadExecutor();
+
+	/* Cached ordinal of the local gimp, or -1 until resolved from the local player */
+	private volatile int localOrdinal = -1;
+
+	/* Clan channel world of each gimp by ordinal, only touched on the client thread */
+	private int[] channelWorlds = new int[0];
+
+	/* Guards the pending updates and their mask */
+	final private Object pendingLock = new Object();
+
+	/* Inbound updates waiting for the next flush, merged per gimp ordinal */
+	private GimDelta[] pendingUpdates = new GimDelta[0];
+
+	/* Bitmask of ordinals with a pending update */
+	private volatile int pendingMask = 0;
+
+	/* Updates being applied by the writer, swapped with the pending ones on each flush */
+	private GimDelta[] flushingUpdates = new GimDelta[0];
+
+	/* Bitmask of ordinals whose presence may have changed since last polled */
+	final private AtomicInteger presenceChanges = new AtomicInteger();
+
+	/**
+	 * Starts the group's threads if they were shut down, e.g. when the
+	 * plugin is enabled again.
+	 */
+	public synchronized void start()
+	{
+		if (executor.isShutdown())
+		{
+			executor = Executors.newSingleThreadScheduledExecutor();
+		}
+		if (writer.isShutdown())
+		{
+			writer = Executors.newSingleThreadExecutor();
+		}
+		gimHiscoreManager.start();
+	}
+
+	/**
+	 * Shuts down the group's threads, letting the writer finish what is
+	 * queued, e.g. publishing the unloaded group. Should be called once
+	 * the group is unloaded.
+	 */
+	public synchronized void shutdown()
+	{
+		executor.shutdownNow();
+		writer.shutdown();
+		gimHiscoreManager.shutdown();
+	}
 
 	/**
 	 * Poll for completion of future containing result of loaded clan settings.
@@ -101,6 +192,144 @@ public class Group
 		return completionFuture;
 	}
 
+	/**
+	 * Applies a mutation to a copy of the named GimPlayer on the writer thread,
+	 * then publishes a new snapshot containing the mutated copy.
+	 *
+	 * @param name     GimPlayer name
+	 * @param mutation mutation to apply to the copy
+	 * @return future of the published GimPlayer, or null if not in the group
+	 */
+	private CompletableFuture<GimPlayer> write(String name, Consumer<GimPlayer> mutation)
+	{
+		return CompletableFuture.supplyAsync(() -> {
+			final GroupSnapshot current = snapshot;
+			final GimPlayer gimp = current.getGimp(name);
+			if (gimp == null)
+			{
+				return null;
+			}
+			final GimPlayer next = new GimPlayer(gimp);
+			mutation.accept(next);
+			snapshot = current.with(next);
+			postChanges(gimp, next);
+			return next;
+		}, writer);
+	}
+
+	/**
+	 * Posts a change event for each field that differs between the
+	 * previous and next state of a GimPlayer.
+	 *
+	 * @param prev previous GimPlayer state
+	 * @param next next GimPlayer state
+	 */
+	private void postChanges(GimPlayer prev, GimPlayer next)
+	{
+		if (prev.getHp() != next.getHp() || prev.getMaxHp() != next.getMaxHp())
+		{
+			eventBus.post(new GimHpChanged(next, prev.getHp(), next.getHp(), prev.getMaxHp(), next.getMaxHp()));
+		}
+		if (prev.getPrayer() != next.getPrayer() || prev.getMaxPrayer() != next.getMaxPrayer())
+		{
+			eventBus.post(new GimPrayerChanged(next, prev.getPrayer(), next.getPrayer(), prev.getMaxPrayer(), next.getMaxPrayer()));
+		}
+		if (prev.getLocation() != next.getLocation())
+		{
+			eventBus.post(new GimLocationChanged(next, prev.getLocation(), next.getLocation()));
+		}
+		if (prev.getWorld() != next.getWorld())
+		{
+			eventBus.post(new GimWorldChanged(next, prev.getWorld(), next.getWorld()));
+		}
+		if (prev.isGhostMode() != next.isGhostMode())
+		{
+			eventBus.post(new GimGhostModeChanged(next, prev.isGhostMode(), next.isGhostMode()));
+		}
+		if (!Objects.equals(prev.getNotes(), next.getNotes()))
+		{
+			eventBus.post(new GimNotesChanged(next, prev.getNotes(), next.getNotes()));
+		}
+		if (!Objects.equals(prev.getLastActivity(), next.getLastActivity()))
+		{
+			eventBus.post(new GimActivityChanged(next, prev.getLastActivity(), next.getLastActivity()));
+		}
+	}
+
+	/**
+	 * Replaces the whole snapshot on the writer thread.
+	 *
+	 * @param next snapshot to publish
+	 * @return future completed once the snapshot is published
+	 */
+	private CompletableFuture<Void> publish(GroupSnapshot next)
+	{
+		return CompletableFuture.runAsync(() -> {
+			snapshot = next;
+			// Membership changed, so any cached ordinal or pending update is meaningless now
+			invalidateLocalGimp();
+			synchronized (pendingLock)
+			{
+				pendingUpdates = new GimDelta[next.size()];
+				flushingUpdates = new GimDelta[next.size()];
+				pendingMask = 0;
+			}
+		}, writer);
+	}
+
+	/**
+	 * Publishes the group state saved by the account's last session, so it can
+	 * be rendered before the group is loaded. Every restored gimp is marked
+	 * stale until live data is applied to it. Worlds are taken from the clan
+	 * channel when it is available, since the saved ones are likely outdated.
+	 *
+	 * @param accountHash hash of the logged in account
+	 * @return future of whether any saved state was published
+	 */
+	public CompletableFuture<Boolean> warmStart(long accountHash)
+	{
+		this.accountHash = accountHash;
+		final GimSnapshotStore.WarmGroup warm = gimSnapshotStore.read(accountHash, GIMP_COLORS);
+		if (warm == null || warm.getGimps().isEmpty())
+		{
+			return CompletableFuture.completedFuture(false);
+		}
+		log.debug("Warm starting group {} saved {}ms ago", warm.getName(), System.currentTimeMillis() - warm.getSavedAt());
+		final ClanChannel gimClanChannel = client.getClanChannel(ClanID.GROUP_IRONMAN);
+		if (gimClanChannel != null)
+		{
+			for (GimPlayer gimp : warm.getGimps())
+			{
+				final ClanChannelMember member = gimClanChannel.findMember(gimp.getName());
+				gimp.setWorld(member == null || gimp.isGhostMode() ? GimPlugin.OFFLINE_WORLD : member.getWorld());
+			}
+		}
+		name = warm.getName();
+		return publish(new GroupSnapshot(warm.getGimps())).thenApply(v -> true);
+	}
+
+	/**
+	 * Carries the state of any gimp in the current snapshot, e.g. restored by
+	 * {@link #warmStart(long)}, over to the same gimp in freshly loaded ones.
+	 * Must be called on the writer thread.
+	 *
+	 * @param gimps freshly loaded GimPlayers
+	 * @return snapshot of the loaded GimPlayers
+	 */
+	private GroupSnapshot carryOver(List<GimPlayer> gimps)
+	{
+		final GroupSnapshot current = snapshot;
+		for (GimPlayer gimp : gimps)
+		{
+			final GimPlayer previous = current.getGimp(gimp.getName());
+			if (previous != null)
+			{
+				gimp.restore(previous);
+			}
+		}
+		return new GroupSnapshot(gimps);
+	}
+
 	/**
 	 * Loads player data to the Group once the client has finished loading clan
 	 * data. Initializes data for the local gimp.
@@ -116,19 +345,22 @@ public class Group
 			assert gimClanSettings != null;
 			name = gimClanSettings.getName();
 			List<ClanMember> clanMembers = gimClanSettings.getMembers();
+			List<GimPlayer> gimps = new ArrayList<>();
 			for (int i = 0; i < clanMembers.size(); i++)
 			{
 				final ClanMember member = clanMembers.get(i);
 				// For some reason, clan member names with spaces use the no-break
 				// space character, so we must sanitize it
-				String name = sanitize(member.getName());
+				String name = sanitize(member.getName()).intern();
 				int world = getCurrentWorld(name);
-				gimps.add(new GimPlayer(name, world, GIMP_COLORS[i]));
+				gimps.add(new GimPlayer(name, i, world, GIMP_COLORS[i]));
 			}
-			// Load local gimp data, including hiscores
-			localLoad().whenCompleteAsync((r, e) -> {
+			// Publish the gimps, keeping any warm state, then load local gimp data, including hiscores
+			CompletableFuture.supplyAsync(() -> carryOver(gimps), writer).thenCompose(this::publish).thenCompose(v -> localLoad()).whenCompleteAsync((r, e) -> {
 				loaded = true;
 				loadingResult.complete(null);
+				// Warm up hiscores for the rest of the group in the background
+				gimHiscoreManager.prefetch(getNames(), TimeUnit.SECONDS.toMillis(config.hiscoresPrefetchInterval()));
 			});
 		});
 		return loadingResult;
@@ -150,116 +382,311 @@ public class Group
 			loadingResult.cancel(true);
 			return loadingResult;
 		}
-		localUpdate();
-		setHiscores(localGimp.getName()).whenCompleteAsync((result, ext) -> {
+		localName = localGimp.getName();
+		localUpdate().thenCompose(gimp -> setHiscores(localGimp.getName())).whenCompleteAsync((result, ext) -> {
 			loadingResult.complete(null);
 		});
 		return loadingResult;
 	}
 
 	/**
-	 * Maps a raw GimPlayer data object to a GimPlayer in the Group.
+	 * Queues inbound gimp data for the next flush, merging it field by field
+	 * into any data already queued for the same gimp. The newest version of
+	 * each field wins. The data is copied, so the delta can be reused.
 	 *
-	 * @param gimpData a GimPlayer instance holding broadcast data
+	 * @param gimpData inbound gimp data
 	 */
-	public void update(GimPlayer gimpData)
+	public void enqueueUpdate(GimDelta gimpData)
 	{
-		for (GimPlayer gimp : gimps)
+		final int ordinal = snapshot.getOrdinal(gimpData.getName());
+		if (ordinal < 0 || gimpData.isEmpty())
 		{
-			String gimpName = gimpData.getName();
-			if (gimp.getName().equals(gimpName))
+			return;
+		}
+		synchronized (pendingLock)
+		{
+			if (ordinal >= pendingUpdates.length)
 			{
-				if (gimpData.getHp() != null)
-				{
-					gimp.setHp(gimpData.getHp());
-				}
-				if (gimpData.getMaxHp() != null)
-				{
-					gimp.setMaxHp(gimpData.getMaxHp());
-				}
-				if (gimpData.getPrayer() != null)
-				{
-					gimp.setPrayer(gimpData.getPrayer());
-				}
-				if (gimpData.getMaxPrayer() != null)
-				{
-					gimp.setMaxPrayer(gimpData.getMaxPrayer());
-				}
-				if (gimpData.getNotes() != null)
+				return;
+			}
+			GimDelta pending = pendingUpdates[ordinal];
+			if (pending == null)
+			{
+				pending = new GimDelta();
+				pendingUpdates[ordinal] = pending;
+			}
+			if ((pendingMask & (1 << ordinal)) == 0)
+			{
+				pending.clear();
+				pending.setName(gimpData.getName());
+				pendingMask |= 1 << ordinal;
+			}
+			pending.merge(gimpData);
+		}
+	}
+
+	public boolean hasPendingUpdates()
+	{
+		return pendingMask != 0;
+	}
+
+	/**
+	 * Maps all queued gimp data to the GimPlayers in the Group as a single
+	 * batch, publishing one snapshot for the whole batch. Fields older than
+	 * the ones already applied are discarded, so state converges no matter
+	 * which transport delivers it or in what order.
+	 *
+	 * @return future completed once the batch is published
+	 */
+	public CompletableFuture<Void> flushUpdates()
+	{
+		return CompletableFuture.runAsync(() -> {
+			final GimDelta[] batch;
+			final int mask;
+			synchronized (pendingLock)
+			{
+				// Swap buffers, so new updates can be queued while this batch is applied
+				batch = pendingUpdates;
+				pendingUpdates = flushingUpdates;
+				flushingUpdates = batch;
+				mask = pendingMask;
+				pendingMask = 0;
+			}
+			final GroupSnapshot prev = snapshot;
+			GroupSnapshot next = prev;
+			int changed = 0;
+			for (int ordinal = 0; ordinal < batch.length; ordinal++)
+			{
+				if ((mask & (1 << ordinal)) == 0)
 				{
-					gimp.setNotes(gimpData.getNotes());
+					continue;
 				}
-				// Must set ghost mode before location!
-				if (gimpData.getGhostMode() != null)
+				final GimPlayer updated = new GimPlayer(prev.getGimp(ordinal));
+				// Skip stale or redundant data entirely
+				if (applyUpdate(updated, batch[ordinal]))
 				{
-					setGhostMode(gimpName, gimpData.getGhostMode());
+					next = next.with(updated);
+					changed |= 1 << ordinal;
 				}
-				if (gimpData.getLocation() != null)
+			}
+			if (changed == 0)
+			{
+				return;
+			}
+			snapshot = next;
+			if (gimLatencyTracker.isEnabled())
+			{
+				for (int ordinal = 0; ordinal < batch.length; ordinal++)
 				{
-					setLocation(gimpName, gimpData.getLocation());
+					if ((changed & (1 << ordinal)) != 0)
+					{
+						gimLatencyTracker.recordRender(batch[ordinal]);
+					}
 				}
-				if (gimpData.getLastActivity() != null)
+			}
+			for (int ordinal = 0; ordinal < batch.length; ordinal++)
+			{
+				if ((changed & (1 << ordinal)) != 0)
 				{
-					gimp.setLastActivity(gimpData.getLastActivity());
+					final GimPlayer gimp = prev.getGimp(ordinal);
+					final GimPlayer updated = next.getGimp(ordinal);
+					if (gimp.isGhostMode() != updated.isGhostMode())
+					{
+						// Re-check presence on the next tick, since it depends on ghost mode
+						markPresenceChanged(ordinal);
+					}
+					postChanges(gimp, updated);
 				}
 			}
+		}, writer);
+	}
+
+	/**
+	 * Applies the fields of inbound gimp data to a GimPlayer, skipping each
+	 * field the GimPlayer already holds a newer version of.
+	 *
+	 * @param gimp     GimPlayer to update
+	 * @param gimpData inbound gimp data
+	 * @return whether any field was applied
+	 */
+	private static boolean applyUpdate(GimPlayer gimp, GimDelta gimpData)
+	{
+		boolean applied = false;
+		if (accept(gimp, gimpData, GimPlayer.HP))
+		{
+			gimp.setHp(gimpData.getHp());
+			applied = true;
+		}
+		if (accept(gimp, gimpData, GimPlayer.MAX_HP))
+		{
+			gimp.setMaxHp(gimpData.getMaxHp());
+			applied = true;
+		}
+		if (accept(gimp, gimpData, GimPlayer.PRAYER))
+		{
+			gimp.setPrayer(gimpData.getPrayer());
+			applied = true;
+		}
+		if (accept(gimp, gimpData, GimPlayer.MAX_PRAYER))
+		{
+			gimp.setMaxPrayer(gimpData.getMaxPrayer());
+			applied = true;
+		}
+		if (accept(gimp, gimpData, GimPlayer.NOTES))
+		{
+			gimp.setNotes(gimpData.getNotes());
+			applied = true;
+		}
+		// Must set ghost mode before location!
+		if (accept(gimp, gimpData, GimPlayer.GHOST_MODE))
+		{
+			gimp.setGhostMode(gimpData.isGhostMode());
+			if (gimpData.isGhostMode())
+			{
+				gimp.setWorld(GimPlugin.OFFLINE_WORLD);
+			}
+			applied = true;
+		}
+		if (accept(gimp, gimpData, GimPlayer.LOCATION))
+		{
+			gimp.setLocation(gimpData.getLocation());
+			applied = true;
 		}
+		if (accept(gimp, gimpData, GimPlayer.LAST_ACTIVITY))
+		{
+			gimp.setLastActivity(gimpData.getLastActivity());
+			applied = true;
+		}
+		if (applied)
+		{
+			gimp.setStale(false);
+		}
+		return applied;
+	}
+
+	private static boolean accept(GimPlayer gimp, GimDelta gimpData, int field)
+	{
+		return gimpData.has(field) && gimp.acceptVersion(field, gimpData.getVersion(field));
 	}
 
+	/**
+	 * Saves the state of a loaded group for the next session's warm start,
+	 * then clears it.
+	 */
 	public void unload()
 	{
-		gimps.clear();
+		gimHiscoreManager.stopPrefetch();
+		gimHiscoreManager.clearCache();
+		final GroupSnapshot current = snapshot;
+		if (loaded && accountHash != -1 && !current.isEmpty())
+		{
+			gimSnapshotStore.write(accountHash, name, current.getGimps(), localName);
+		}
+		accountHash = -1;
+		localName = null;
+		publish(GroupSnapshot.EMPTY);
 		loaded = false;
 	}
 
+	public List<GimPlayer> getGimps()
+	{
+		return snapshot.getGimps();
+	}
+
 	public GimPlayer getGimp(String name)
 	{
-		for (GimPlayer gimp : gimps)
+		return snapshot.getGimp(name);
+	}
+
+	/**
+	 * Gets the local GimPlayer, resolving it from the local player once
+	 * and caching its ordinal until the login changes.
+	 *
+	 * @return local GimPlayer or null
+	 */
+	public GimPlayer getLocalGimp()
+	{
+		final GroupSnapshot current = snapshot;
+		int ordinal = localOrdinal;
+		if (ordinal < 0)
 		{
-			if (gimp.getName().equals(name))
+			final Player localPlayer = client.getLocalPlayer();
+			if (localPlayer == null)
+			{
+				return null;
+			}
+			ordinal = current.getOrdinal(localPlayer.getName());
+			if (ordinal < 0)
 			{
-				return gimp;
+				return null;
 			}
+			localOrdinal = ordinal;
 		}
-		return null;
+		return ordinal < current.size() ? current.getGimp(ordinal) : null;
 	}
 
-	public GimPlayer getLocalGimp()
+	public boolean isLocalGimp(GimPlayer gimp)
 	{
-		final Player localPlayer = client.getLocalPlayer();
-		if (localPlayer != null)
-		{
-			return getGimp(localPlayer.getName());
-		}
-		return null;
+		final GimPlayer localGimp = getLocalGimp();
+		return localGimp != null && localGimp.getOrdinal() == gimp.getOrdinal();
+	}
+
+	/**
+	 * Forgets the cached local gimp, to be called whenever the logged in
+	 * account may have changed.
+	 */
+	public void invalidateLocalGimp()
+	{
+		localOrdinal = -1;
 	}
 
 	/**
 	 * Updates the local GimPlayer if that player exists using data
 	 * available on the client.
+	 *
+	 * @return future of the updated local GimPlayer, or null if none
 	 */
-	public void localUpdate()
+	public CompletableFuture<GimPlayer> localUpdate()
 	{
 		GimPlayer localGimp = getLocalGimp();
-		if (localGimp != null)
+		if (localGimp == null)
 		{
-			localGimp.setHp(client.getBoostedSkillLevel(Skill.HITPOINTS));
-			localGimp.setMaxHp(client.getRealSkillLevel(Skill.HITPOINTS));
-			localGimp.setPrayer(client.getBoostedSkillLevel(Skill.PRAYER));
-			localGimp.setMaxPrayer(client.getRealSkillLevel(Skill.PRAYER));
-			localGimp.setGhostMode(config.ghostMode());
-			setWorld(localGimp.getName(), client.getWorld());
+			return CompletableFuture.completedFuture(null);
 		}
+		// Read client state on the calling thread, then hand it off to the writer
+		final int hp = client.getBoostedSkillLevel(Skill.HITPOINTS);
+		final int maxHp = client.getRealSkillLevel(Skill.HITPOINTS);
+		final int prayer = client.getBoostedSkillLevel(Skill.PRAYER);
+		final int maxPrayer = client.getRealSkillLevel(Skill.PRAYER);
+		final boolean ghostMode = config.ghostMode();
+		final int world = client.getWorld();
+		return write(localGimp.getName(), gimp -> {
+			gimp.setHp(hp);
+			gimp.setMaxHp(maxHp);
+			gimp.setPrayer(prayer);
+			gimp.setMaxPrayer(maxPrayer);
+			gimp.setGhostMode(ghostMode);
+			gimp.setWorld(world);
+			gimp.setStale(false);
+		});
 	}
 
-	public void localUpdate(WorldPoint playerLocation)
+	/**
+	 * Updates the local GimPlayer like {@link #localUpdate()}, and also
+	 * sets its location.
+	 *
+	 * @param playerLocation packed location of the local player
+	 * @return future of the updated local GimPlayer, or null if none
+	 */
+	public CompletableFuture<GimPlayer> localUpdate(int playerLocation)
 	{
-		localUpdate();
-		GimPlayer localGimp = getLocalGimp();
-		if (localGimp != null)
-		{
-			setLocation(localGimp.getName(), new GimLocation(playerLocation));
-		}
+		return localUpdate().thenCompose(localGimp -> {
+			if (localGimp == null || playerLocation == GimLocation.NONE)
+			{
+				return CompletableFuture.completedFuture(localGimp);
+			}
+			return setLocation(localGimp.getName(), playerLocation);
+		});
 	}
 
 	/**
@@ -267,33 +694,55 @@ public class Group
 	 * player has received a local update. These properties might depend on
 	 * data from server before falling back on a local source.
 	 *
-	 * @param gimpData GimPlayer data
+	 * @param gimpData inbound gimp data, only read before this returns
+	 * @return future of the hydrated local GimPlayer, or null if none
 	 */
-	public void localHydrate(GimPlayer gimpData)
+	public CompletableFuture<GimPlayer> localHydrate(GimDelta gimpData)
 	{
 		Player localPlayer = client.getLocalPlayer();
 		GimPlayer localGimp = getLocalGimp();
-		if (localPlayer != null && localGimp != null)
+		if (localPlayer == null || localGimp == null)
 		{
-			// Notes must come from the server if they exist
-			String gimpNotes;
-			if (gimpData.getNotes() != null)
-			{
-				gimpNotes = gimpData.getNotes();
-			}
-			// Otherwise, fall back on notes data saved to config
-			else
+			return CompletableFuture.completedFuture(null);
+		}
+		// Notes must come from the server if they exist
+		String gimpNotes;
+		if (gimpData.has(GimPlayer.NOTES))
+		{
+			gimpNotes = gimpData.getNotes();
+		}
+		// Otherwise, fall back on notes data saved to config
+		else
+		{
+			gimpNotes = config.notesData();
+		}
+		return setNotes(localGimp.getName(), gimpNotes);
+	}
+
+	/**
+	 * Gets the last seen sequence number of every other gimp that has
+	 * received versioned data, for resuming a session.
+	 *
+	 * @return map: name => last seen sequence number
+	 */
+	public Map<String, Long> getLastSeen()
+	{
+		final Map<String, Long> lastSeen = new HashMap<>();
+		for (GimPlayer gimp : getGimps())
+		{
+			final long lastSeq = gimp.getLastSeq();
+			if (lastSeq > 0 && !isLocalGimp(gimp))
 			{
-				gimpNotes = config.notesData();
+				lastSeen.put(gimp.getName(), lastSeq);
 			}
-			localGimp.setNotes(gimpNotes);
 		}
+		return lastSeen;
 	}
 
 	public List<String> getNames()
 	{
 		List<String> names = new ArrayList<>();
-		for (GimPlayer gimp : gimps)
+		for (GimPlayer gimp : getGimps())
 		{
 			names.add(gimp.getName());
 		}
@@ -301,59 +750,70 @@ public class Group
 	}
 
 	/**
-	 * Sets a GimPlayer's location using the provided location data and
-	 * updates its icon on the world map if the gimp is online and doesn't
-	 * have ghost mode enabled.
+	 * Sets a GimPlayer's location using the provided location data.
 	 *
 	 * @param name     GimPlayer name
-	 * @param location GimPlayer location data
+	 * @param location packed GimPlayer location
+	 * @return future of the updated GimPlayer, or null if not in the group
 	 */
-	public void setLocation(String name, GimLocation location)
+	public CompletableFuture<GimPlayer> setLocation(String name, int location)
 	{
-		GimPlayer gimp = getGimp(name);
-		if (gimp == null)
-		{
-			return;
-		}
-		// Create new GimLocation from raw data
-		GimLocation newGimLocation = new GimLocation(location.getX(), location.getY(), location.getPlane());
-		// Set GimPlayer location to new location
-		gimp.setLocation(newGimLocation);
+		return write(name, gimp -> gimp.setLocation(location));
 	}
 
 	/**
-	 * Sets the world number of the GimPlayer by name and removes
-	 * the map point if the world number is 0, e.g. the player is offline.
+	 * Sets the world number of the GimPlayer by name, where 0 means
+	 * the player is offline.
 	 *
 	 * @param name  GimPlayer name
 	 * @param world world number
+	 * @return future of the updated GimPlayer, or null if not in the group
 	 */
-	public void setWorld(String name, int world)
+	public CompletableFuture<GimPlayer> setWorld(String name, int world)
 	{
-		GimPlayer gimp = getGimp(name);
-		if (gimp == null)
-		{
-			return;
-		}
-		gimp.setWorld(world);
+		return write(name, gimp -> gimp.setWorld(world));
 	}
 
 	/**
-	 * Sets the ghost mode value of the GimPlayer by name. If the GimPlayer
-	 * has a location stored, either removes the corresponding map point or
-	 * creates one, depending on the new ghost mode setting.
+	 * Sets the ghost mode value of the GimPlayer by name.
 	 *
 	 * @param name      GimPlayer name
 	 * @param ghostMode ghost mode setting
+	 * @return future of the updated GimPlayer, or null if not in the group
 	 */
-	public void setGhostMode(String name, boolean ghostMode)
+	public CompletableFuture<GimPlayer> setGhostMode(String name, boolean ghostMode)
 	{
-		GimPlayer gimp = getGimp(name);
-		if (gimp == null)
-		{
-			return;
-		}
-		gimp.setGhostMode(ghostMode);
+		return write(name, gimp -> gimp.setGhostMode(ghostMode));
+	}
+
+	public CompletableFuture<GimPlayer> setHp(String name, int hp)
+	{
+		return write(name, gimp -> gimp.setHp(hp));
+	}
+
+	public CompletableFuture<GimPlayer> setMaxHp(String name, int maxHp)
+	{
+		return write(name, gimp -> gimp.setMaxHp(maxHp));
+	}
+
+	public CompletableFuture<GimPlayer> setPrayer(String name, int prayer)
+	{
+		return write(name, gimp -> gimp.setPrayer(prayer));
+	}
+
+	public CompletableFuture<GimPlayer> setMaxPrayer(String name, int maxPrayer)
+	{
+		return write(name, gimp -> gimp.setMaxPrayer(maxPrayer));
+	}
+
+	public CompletableFuture<GimPlayer> setNotes(String name, String notes)
+	{
+		return write(name, gimp -> gimp.setNotes(notes));
+	}
+
+	public CompletableFuture<GimPlayer> setLastActivity(String name, String lastActivity)
+	{
+		return write(name, gimp -> gimp.setLastActivity(lastActivity));
 	}
 
 	/**
@@ -371,7 +831,7 @@ public class Group
 			ClanChannelMember onlineMember = gimClanChannel.findMember(name);
 			GimPlayer gimp = getGimp(name);
 			// If you cannot find member in clan, or GimPlayer is in ghost mode
-			if (onlineMember == null || (gimp != null && gimp.getGhostMode()))
+			if (onlineMember == null || (gimp != null && gimp.isGhostMode()))
 			{
 				return GimPlugin.OFFLINE_WORLD;
 			}
@@ -380,47 +840,135 @@ public class Group
 		return GimPlugin.OFFLINE_WORLD;
 	}
 
+	/**
+	 * Records the clan channel world of a gimp, flagging its presence as
+	 * changed if the world differs from the last known one. Must be called
+	 * on the client thread.
+	 *
+	 * @param name  GimPlayer name
+	 * @param world world number, 0 if the gimp left the channel
+	 */
+	public void updatePresence(String name, int world)
+	{
+		final GroupSnapshot current = snapshot;
+		final int ordinal = current.getOrdinal(name);
+		if (ordinal < 0)
+		{
+			return;
+		}
+		if (channelWorlds.length != current.size())
+		{
+			// Membership changed, so start over and flag everyone
+			channelWorlds = new int[current.size()];
+			presenceChanges.set((1 << current.size()) - 1);
+		}
+		if (channelWorlds[ordinal] != world)
+		{
+			channelWorlds[ordinal] = world;
+			markPresenceChanged(ordinal);
+		}
+	}
+
+	/**
+	 * Re-reads the world of every gimp from the clan channel, in case
+	 * a clan member event was missed. Must be called on the client thread.
+	 */
+	public void reconcilePresence()
+	{
+		final ClanChannel gimClanChannel = client.getClanChannel(ClanID.GROUP_IRONMAN);
+		for (GimPlayer gimp : getGimps())
+		{
+			final ClanChannelMember member = gimClanChannel != null ? gimClanChannel.findMember(gimp.getName()) : null;
+			updatePresence(gimp.getName(), member != null ? member.getWorld() : GimPlugin.OFFLINE_WORLD);
+		}
+	}
+
+	/**
+	 * Flags the presence of a gimp as changed, e.g. when its ghost mode changes.
+	 *
+	 * @param ordinal GimPlayer ordinal
+	 */
+	public void markPresenceChanged(int ordinal)
+	{
+		presenceChanges.updateAndGet(changes -> changes | (1 << ordinal));
+	}
+
+	/**
+	 * Gets and clears the bitmask of gimp ordinals whose presence may have
+	 * changed since the last poll.
+	 *
+	 * @return bitmask of changed ordinals
+	 */
+	public int pollPresenceChanges()
+	{
+		return presenceChanges.getAndSet(0);
+	}
+
+	/**
+	 * Gets the world of a gimp as last seen in the clan channel, returns 0 if
+	 * the gimp is offline or in ghost mode. Must be called on the client thread.
+	 *
+	 * @param gimp GimPlayer
+	 * @return world number
+	 */
+	public int getPresenceWorld(GimPlayer gimp)
+	{
+		final int ordinal = gimp.getOrdinal();
+		if (ordinal >= channelWorlds.length || gimp.isGhostMode())
+		{
+			return GimPlugin.OFFLINE_WORLD;
+		}
+		return channelWorlds[ordinal];
+	}
+
 	public CompletableFuture<HiscoreResult> setHiscores(String name)
 	{
-		GimPlayer gimp = getGimp(name);
 		return getHiscores(name).whenCompleteAsync((result, ext) -> {
-			gimp.setHiscores(result);
+			write(name, gimp -> gimp.setHiscores(result));
 		});
 	}
 
 	/**
-	 * Fetches player hiscores via HiscoreManager, caching the result
-	 * and returning the pending result to the invoker.
+	 * Fetches player hiscores via GimHiscoreManager, sharing any in-flight
+	 * lookup for the same name and returning the pending result to the invoker.
 	 *
 	 * @param name GimPlayer name
 	 * @return player hiscores result
 	 */
 	public CompletableFuture<HiscoreResult> getHiscores(String name)
 	{
-		CompletableFuture<HiscoreResult> hiscoreResult = new CompletableFuture<>();
-		try
-		{
-			HiscoreResult result = hiscoreManager.lookup(name, HiscoreEndpoint.NORMAL);
-			if (result == null)
-			{
-				log.warn("Could not find hiscore data for {}", name);
-			}
-			hiscoreResult.complete(result);
-		}
-		catch (IOException e)
-		{
-			log.error("Error fetching hiscores: {}", String.valueOf(e));
-			hiscoreResult.completeExceptionally(e);
-		}
-		return hiscoreResult;
+		return gimHiscoreManager.lookup(name);
+	}
+
+	/**
+	 * Gets the last fetched hiscores of a player without waiting on a lookup.
+	 *
+	 * @param name GimPlayer name
+	 * @return cached player hiscores or null
+	 */
+	public HiscoreResult getCachedHiscores(String name)
+	{
+		return gimHiscoreManager.getCached(name);
+	}
+
+	/**
+	 * Checks if the cached hiscores of a player are recent enough to show
+	 * without looking them up again.
+	 *
+	 * @param name GimPlayer name
+	 * @return whether the cached hiscores are fresh
+	 */
+	public boolean hasFreshHiscores(String name)
+	{
+		return gimHiscoreManager.isFresh(name);
 	}
 
 	public boolean isEmpty()
 	{
-		return gimps.isEmpty();
+		return snapshot.isEmpty();
 	}
 
-	private static String sanitize(String lookup)
+	static String sanitize(String lookup)
 	{
 		return lookup.replace('\u00A0', ' ');
 	}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * Immutable view of the group's state at a point in time. Snapshots are only
+ * created by the {@link Group}'s writer thread and published through a volatile
+ * reference, so they can be read from any thread without locking. The GimPlayers
+ * held by a snapshot must never be mutated once published.
+ * <p>
+ * Each gimp occupies the slot given by its ordinal, and gimps are indexed by
+ * sanitized name. Snapshots of the same membership share a single index.
+ */
+public class GroupSnapshot
+{
+	public static final GroupSnapshot EMPTY = new GroupSnapshot(Collections.emptyList());
+
+	private final GimPlayer[] slots;
+
+	/* Name => ordinal, shared between all snapshots of the same membership */
+	private final Map<String, Integer> ordinals;
+
+	@Getter
+	private final List<GimPlayer> gimps;
+
+	GroupSnapshot(List<GimPlayer> gimps)
+	{
+		slots = new GimPlayer[gimps.size()];
+		Map<String, Integer> index = new HashMap<>();
+		for (GimPlayer gimp : gimps)
+		{
+			slots[gimp.getOrdinal()] = gimp;
+			index.put(gimp.getName(), gimp.getOrdinal());
+		}
+		ordinals = Collections.unmodifiableMap(index);
+		this.gimps = Collections.unmodifiableList(Arrays.asList(slots));
+	}
+
+	private GroupSnapshot(GimPlayer[] slots, Map<String, Integer> ordinals)
+	{
+		this.slots = slots;
+		this.ordinals = ordinals;
+		this.gimps = Collections.unmodifiableList(Arrays.asList(slots));
+	}
+
+	public GimPlayer getGimp(String name)
+	{
+		final int ordinal = getOrdinal(name);
+		return ordinal < 0 ? null : slots[ordinal];
+	}
+
+	public GimPlayer getGimp(int ordinal)
+	{
+		return slots[ordinal];
+	}
+
+	/**
+	 * Gets the ordinal of a gimp by name, which is stable for as long as
+	 * the group's membership doesn't change.
+	 *
+	 * @param name GimPlayer name, sanitized if necessary
+	 * @return ordinal of the gimp, or -1 if not in the group
+	 */
+	public int getOrdinal(String name)
+	{
+		if (name == null)
+		{
+			return -1;
+		}
+		final Integer ordinal = ordinals.get(Group.sanitize(name));
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	public int size()
+	{
+		return slots.length;
+	}
+
+	public boolean isEmpty()
+	{
+		return slots.length == 0;
+	}
+
+	/**
+	 * Creates a new snapshot with the GimPlayer in the same slot replaced,
+	 * sharing every other GimPlayer and the index with this snapshot.
+	 *
+	 * @param gimp replacement GimPlayer
+	 * @return the new snapshot
+	 */
+	GroupSnapshot with(GimPlayer gimp)
+	{
+		final GimPlayer[] next = slots.clone();
+		next[gimp.getOrdinal()] = gimp;
+		return new GroupSnapshot(next, ordinals);
+	}
+}
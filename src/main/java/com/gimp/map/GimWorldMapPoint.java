@@ -43,7 +43,7 @@ import net.runelite.client.ui.overlay.worldmap.WorldMapPoint;
  */
 public class GimWorldMapPoint
 {
-	private final GimPlayer gimp;
+	private final String name;
 	@Getter
 	private final WorldMapPoint worldMapPoint;
 	private double x;
@@ -54,7 +54,7 @@ public class GimWorldMapPoint
 
 	public GimWorldMapPoint(GimPlayer gimp, WorldMapPoint worldMapPoint)
 	{
-		this.gimp = gimp;
+		this.name = gimp.getName();
 		this.worldMapPoint = worldMapPoint;
 		x = this.worldMapPoint.getWorldPoint().getX();
 		y = this.worldMapPoint.getWorldPoint().getY();
@@ -110,18 +110,25 @@ public class GimWorldMapPoint
 		}
 	}
 
-	public boolean moveTowardPlayer(boolean frameToggle)
+	/**
+	 * Moves the map point toward the player's current location.
+	 *
+	 * @param gimp        latest state of the player this point belongs to
+	 * @param frameToggle whether this is an "even" frame of map point ticking
+	 * @return whether the map point moved
+	 */
+	public boolean moveTowardPlayer(GimPlayer gimp, boolean frameToggle)
 	{
 		final WorldPoint shownLocation = getWorldPoint();
-		final GimLocation targetLocation = gimp.getLocation();
-		if (shownLocation != null && targetLocation != null)
+		final int targetLocation = gimp.getLocation();
+		if (shownLocation != null && targetLocation != GimLocation.NONE)
 		{
-			int dx = targetLocation.getX() - shownLocation.getX();
-			int dy = targetLocation.getY() - shownLocation.getY();
+			int dx = GimLocation.getX(targetLocation) - shownLocation.getX();
+			int dy = GimLocation.getY(targetLocation) - shownLocation.getY();
 			if (Math.abs(dx) > 30 || Math.abs(dy) > 30)
 			{
 				// If the target location is too far, instantly change the map point
-				setWorldPoint(targetLocation.toWorldPoint());
+				setWorldPoint(GimLocation.toWorldPoint(targetLocation));
 				return true;
 			}
 			else if (dx != 0 || dy != 0)
@@ -133,9 +140,9 @@ public class GimWorldMapPoint
 					// Only move by a max of 1 tile in a given axis (keeps it consistent/smooth)
 					move(Math.min(1, Math.max(dx, -1)), Math.min(1, Math.max(dy, -1)));
 					// If the plane has changed, update it while preserving the shown x/y coordinates
-					if (shownLocation.getPlane() != targetLocation.getPlane())
+					if (shownLocation.getPlane() != GimLocation.getPlane(targetLocation))
 					{
-						setWorldPoint(new WorldPoint(shownLocation.getX(), shownLocation.getY(), targetLocation.getPlane()));
+						setWorldPoint(new WorldPoint(shownLocation.getX(), shownLocation.getY(), GimLocation.getPlane(targetLocation)));
 					}
 					return true;
 				}
@@ -160,14 +167,14 @@ public class GimWorldMapPoint
 			}
 
 			final WorldMapPoint worldMapPoint = new WorldMapPoint(worldPoint, mmIcon);
-			gimWorldMapPointManager.addAssociatedPoint(gimp.getName(), worldMapPoint);
+			gimWorldMapPointManager.addAssociatedPoint(name, worldMapPoint);
 			footsteps.add(worldMapPoint);
 		}
 
 		while (footsteps.size() > maxLength)
 		{
 			final WorldMapPoint popped = footsteps.remove();
-			gimWorldMapPointManager.removeAssociatedPoint(gimp.getName(), popped);
+			gimWorldMapPointManager.removeAssociatedPoint(name, popped);
 		}
 
 	}
@@ -24,6 +24,7 @@
  */
 package com.gimp.map;
 
+import com.gimp.gimps.GimLocation;
 import com.gimp.gimps.GimPlayer;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -100,11 +101,9 @@ public class GimWorldMapPointManager
 	public void addPoint(GimPlayer gimp)
 	{
 		final String name = gimp.getName();
-		if (gimp.getLocation() != null)
+		if (gimp.getLocation() != GimLocation.NONE)
 		{
-			final WorldPoint p = new WorldPoint(gimp.getLocation().getX(),
-				gimp.getLocation().getY(),
-				gimp.getLocation().getPlane());
+			final WorldPoint p = GimLocation.toWorldPoint(gimp.getLocation());
 			final WorldMapPoint worldMapPoint = new WorldMapPoint(p, iconProvider.getIcon(name));
 			// Configure world map point
 			worldMapPoint.setTarget(p);
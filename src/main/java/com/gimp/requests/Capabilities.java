@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * What one side of a connection supports, exchanged when connecting so
+ * each side can use the most efficient mode the other understands. Absent
+ * fields deserialize to their zero values, i.e. unsupported.
+ */
+@Value
+public class Capabilities
+{
+	public static final int PROTOCOL_VERSION = 1;
+
+	/* Largest message the client accepts, in characters of JSON */
+	public static final int MAX_FRAME_SIZE = 1 << 16;
+
+	/* What this client supports */
+	public static final Capabilities CLIENT = new Capabilities(
+		PROTOCOL_VERSION, List.of("json"), List.of(DeflateCodec.NAME), true, true, MAX_FRAME_SIZE);
+
+	int version;
+
+	/* Message encodings, e.g. "json" */
+	List<String> encodings;
+
+	/* Message compression schemes, e.g. "deflate-dict" */
+	List<String> compression;
+
+	/* Whether a connection-ack can resume the session from the last seen sequence numbers */
+	boolean resume;
+
+	/* Whether a ping can request only some fields */
+	boolean fields;
+
+	/* Largest message accepted, 0 if unknown */
+	int maxFrameSize;
+
+	public boolean supportsCompression(String name)
+	{
+		return compression != null && compression.contains(name);
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Unreliable, unordered channel for updates where only the latest value
+ * matters, e.g. location and HP. Datagrams are never acked or resent, so a
+ * lost one doesn't hold up the ones behind it; receivers drop any that
+ * arrive after newer data by its sequence number.
+ * <p>
+ * Datagrams are only sent once the server has answered a "join", so servers
+ * without a UDP endpoint never lose any updates.
+ */
+@Slf4j
+public class DatagramClient
+{
+	/* Fits in a single Ethernet frame, and any hot update is well under it */
+	private static final int MAX_DATAGRAM_SIZE = 1400;
+
+	/* How long the server's last join reply counts, should be a few join intervals */
+	private static final long JOIN_TIMEOUT = 30_000;
+
+	private static final String TYPE_KEY = "type";
+
+	private static final String ROOM_KEY = "room";
+
+	private static final String DATA_KEY = "data";
+
+	private static final String TYPE_JOIN = "join";
+
+	private static final String TYPE_JOINED = "joined";
+
+	private static final String TYPE_BROADCAST = "broadcast";
+
+	final private String namespace;
+
+	@Getter
+	final private String host;
+
+	final private int port;
+
+	final private Gson gson;
+
+	final private ExecutorService reader = Executors.newSingleThreadExecutor();
+
+	private volatile DatagramChannel channel;
+
+	private volatile long joinedAt;
+
+	/* Whether the reader is running, so it's only ever started once at a time */
+	final private AtomicBoolean reading = new AtomicBoolean();
+
+	private volatile boolean stopped;
+
+	public DatagramClient(String namespace, String host, int port, Gson gson)
+	{
+		this.namespace = namespace;
+		this.host = host;
+		this.port = port;
+		this.gson = gson;
+	}
+
+	/**
+	 * Opens the channel to the server and joins the group's room, then
+	 * passes the data of every broadcast received to the listener. The
+	 * host is resolved off the calling thread.
+	 * <p>
+	 * Does nothing if the reader is already running, so it may be called
+	 * again to restart the reader after the channel failed.
+	 *
+	 * @param broadcastListener listener for broadcast data in JSON
+	 */
+	public void start(Consumer<String> broadcastListener)
+	{
+		if (stopped || !reading.compareAndSet(false, true))
+		{
+			return;
+		}
+		reader.execute(() -> {
+			try (DatagramChannel openChannel = DatagramChannel.open())
+			{
+				openChannel.connect(new InetSocketAddress(host, port));
+				channel = openChannel;
+				if (stopped)
+				{
+					return;
+				}
+				join();
+				final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+				while (channel == openChannel)
+				{
+					buffer.clear();
+					try
+					{
+						openChannel.receive(buffer);
+					}
+					catch (PortUnreachableException e)
+					{
+						// The server's port is closed for now, which a later join may find open again
+						log.debug("Datagram port unreachable");
+						joinedAt = 0;
+						continue;
+					}
+					buffer.flip();
+					onDatagram(StandardCharsets.UTF_8.decode(buffer).toString(), broadcastListener);
+				}
+			}
+			catch (ClosedChannelException e)
+			{
+				log.debug("Datagram channel closed");
+			}
+			catch (Exception e)
+			{
+				log.warn("Datagram channel error: {}", String.valueOf(e));
+			}
+			finally
+			{
+				channel = null;
+				joinedAt = 0;
+				reading.set(false);
+			}
+		});
+	}
+
+	/**
+	 * Closes the channel and stops the reader.
+	 */
+	public void stop()
+	{
+		stopped = true;
+		final DatagramChannel openChannel = channel;
+		channel = null;
+		joinedAt = 0;
+		if (openChannel != null)
+		{
+			try
+			{
+				openChannel.close();
+			}
+			catch (IOException e)
+			{
+				log.debug("Datagram channel close error: {}", String.valueOf(e));
+			}
+		}
+		reader.shutdown();
+	}
+
+	/**
+	 * (Re)joins the group's room. Should be called periodically, since
+	 * joins are only answered while the server still has the room, and
+	 * to keep the NAT mapping for the channel alive.
+	 */
+	public void join()
+	{
+		JsonObject frame = new JsonObject();
+		frame.addProperty(TYPE_KEY, TYPE_JOIN);
+		frame.addProperty(ROOM_KEY, namespace);
+		send(frame);
+	}
+
+	/**
+	 * Checks if the server has recently answered a join, i.e. whether
+	 * datagrams are expected to be relayed.
+	 *
+	 * @return whether the channel is joined
+	 */
+	public boolean isJoined()
+	{
+		return channel != null && System.currentTimeMillis() - joinedAt < JOIN_TIMEOUT;
+	}
+
+	/**
+	 * Sends the broadcast data in a single datagram, without waiting for
+	 * any acknowledgement.
+	 *
+	 * @param dataJson broadcast data in JSON
+	 * @return whether the datagram was sent
+	 */
+	public boolean broadcast(String dataJson)
+	{
+		JsonObject frame = new JsonObject();
+		frame.addProperty(TYPE_KEY, TYPE_BROADCAST);
+		frame.addProperty(ROOM_KEY, namespace);
+		frame.add(DATA_KEY, gson.fromJson(dataJson, JsonElement.class));
+		return send(frame);
+	}
+
+	private boolean send(JsonObject frame)
+	{
+		final DatagramChannel openChannel = channel;
+		if (openChannel == null)
+		{
+			return false;
+		}
+		final byte[] bytes = gson.toJson(frame).getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_DATAGRAM_SIZE)
+		{
+			return false;
+		}
+		try
+		{
+			return openChannel.write(ByteBuffer.wrap(bytes)) == bytes.length;
+		}
+		catch (IOException e)
+		{
+			// e.g. the server's port is closed, which is reported on the next send
+			log.debug("Datagram send error: {}", String.valueOf(e));
+			return false;
+		}
+	}
+
+	private void onDatagram(String text, Consumer<String> broadcastListener)
+	{
+		final JsonObject frame;
+		try
+		{
+			frame = gson.fromJson(text, JsonObject.class);
+		}
+		catch (Exception e)
+		{
+			log.debug("Malformed datagram: {}", String.valueOf(e));
+			return;
+		}
+		if (frame == null || !frame.has(TYPE_KEY))
+		{
+			return;
+		}
+		switch (frame.get(TYPE_KEY).getAsString())
+		{
+			case TYPE_JOINED:
+				joinedAt = System.currentTimeMillis();
+				break;
+			case TYPE_BROADCAST:
+				final JsonElement data = frame.get(DATA_KEY);
+				if (data != null && data.isJsonObject())
+				{
+					broadcastListener.accept(data.toString());
+				}
+				break;
+			default:
+				log.debug("Unknown datagram type: {}", frame.get(TYPE_KEY));
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import net.runelite.api.Skill;
+
+/**
+ * Compresses each message on its own with raw deflate, primed with a preset
+ * dictionary of the protocol's keys, the activity vocabulary and the group's
+ * member names. Our messages are too small and too similar for plain deflate
+ * to find anything to reuse within a single one, but with the dictionary
+ * nearly every key and name becomes a short back-reference.
+ * <p>
+ * Both sides must use the exact same dictionary, so it is sent along with
+ * the offer to compress when connecting.
+ */
+public class DeflateCodec
+{
+	public static final String NAME = "deflate-dict";
+
+	/*
+	 * Protocol vocabulary in the order it appears on the wire. Deflate reaches
+	 * back at most 32 KiB and codes nearer matches in fewer bits, so the most
+	 * frequent fragments go last.
+	 */
+	private static final String[] VOCABULARY = {
+		"\"tilePing\":{\"worldPoint\":{", "\"notes\":\"", "\"ghostMode\":false", "\"ghostMode\":true",
+		"\"lastActivity\":\"", "\"world\":", "\"maxPrayer\":", "\"prayer\":", "\"maxHp\":", "\"hp\":",
+		"\"location\":{\"x\":", ",\"y\":", ",\"plane\":", "\"sentAt\":", "\"seq\":", "{\"name\":\""
+	};
+
+	final private byte[] dictionary;
+
+	final private Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+
+	final private Inflater inflater = new Inflater(true);
+
+	/* Set once the native zlib streams are freed, after which nothing can be coded */
+	private boolean ended;
+
+	public DeflateCodec(byte[] dictionary)
+	{
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Builds the preset dictionary for a group.
+	 *
+	 * @param names names of the group's members
+	 * @return dictionary bytes
+	 */
+	public static byte[] buildDictionary(Collection<String> names)
+	{
+		StringBuilder builder = new StringBuilder();
+		for (Skill skill : Skill.values())
+		{
+			builder.append('"').append(skill).append('"');
+		}
+		builder.append('"').append("IN_GAME_ACTIVITY").append('"');
+		for (String name : names)
+		{
+			builder.append("{\"name\":\"").append(name).append("\",");
+		}
+		for (String fragment : VOCABULARY)
+		{
+			builder.append(fragment);
+		}
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	public byte[] getDictionary()
+	{
+		return dictionary.clone();
+	}
+
+	/**
+	 * Compresses a message.
+	 *
+	 * @param message message JSON
+	 * @return compressed message
+	 * @throws IllegalStateException if the codec has been ended
+	 */
+	public synchronized byte[] encode(String message)
+	{
+		if (ended)
+		{
+			throw new IllegalStateException("Codec has been ended");
+		}
+		final byte[] input = message.getBytes(StandardCharsets.UTF_8);
+		deflater.reset();
+		deflater.setDictionary(dictionary);
+		deflater.setInput(input);
+		deflater.finish();
+		ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 16);
+		final byte[] buffer = new byte[Math.max(input.length, 64)];
+		while (!deflater.finished())
+		{
+			output.write(buffer, 0, deflater.deflate(buffer));
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Decompresses a message compressed with the same dictionary.
+	 *
+	 * @param compressed compressed message
+	 * @return message JSON
+	 * @throws DataFormatException if the data is corrupt or was compressed with another dictionary,
+	 *                             or the codec has been ended
+	 */
+	public synchronized String decode(byte[] compressed) throws DataFormatException
+	{
+		if (ended)
+		{
+			throw new DataFormatException("Codec has been ended");
+		}
+		inflater.reset();
+		inflater.setDictionary(dictionary);
+		inflater.setInput(compressed);
+		ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 4);
+		final byte[] buffer = new byte[Math.max(compressed.length * 4, 256)];
+		while (!inflater.finished())
+		{
+			final int length = inflater.inflate(buffer);
+			if (length == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+			{
+				throw new DataFormatException("Truncated message");
+			}
+			output.write(buffer, 0, length);
+		}
+		return output.toString(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Frees the native memory of the deflater and inflater. Should be called
+	 * once the connection the codec was offered on is closed.
+	 */
+	public synchronized void end()
+	{
+		if (ended)
+		{
+			return;
+		}
+		ended = true;
+		deflater.end();
+		inflater.end();
+	}
+}
@@ -24,9 +24,17 @@
  */
 package com.gimp.requests;
 
-import com.gimp.GimPluginConfig;
 import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import lombok.NonNull;
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -38,6 +46,7 @@ import okhttp3.ResponseBody;
 import okhttp3.OkHttpClient;
 import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -50,68 +59,201 @@ public class HttpClient extends RequestClient
 
 	public static final int OK = 200;
 
+	public static final int TOO_MANY_REQUESTS = 429;
+
+	public static final int SERVICE_UNAVAILABLE = 503;
+
+	/* How long to back off if the server throttles without saying for how long, in ms */
+	private static final long DEFAULT_RETRY_AFTER = 5000;
+
 	public static final String EMPTY_BODY = "";
 
-	public HttpClient(String namespace, OkHttpClient client, GimPluginConfig config)
+	private static final String CAPABILITIES_HEADER = "X-Gim-Capabilities";
+
+	/* Capabilities JSON offered to the server on the first ping, none if unset */
+	@Setter
+	private String capabilities;
+
+	/* Receives the server's capabilities JSON, if it replies to the offer */
+	@Setter
+	private Consumer<String> capabilitiesListener;
+
+	/* Whether a ping has succeeded since the capabilities were offered */
+	private volatile boolean capabilitiesExchanged;
+
+	public HttpClient(String namespace, OkHttpClient client, ServerEndpoints endpoints)
 	{
-		this.config = config;
+		this.endpoints = endpoints;
 		this.namespace = namespace;
 		this.client = client;
 	}
 
 	/**
-	 * Makes an HTTP request with the given method to the URI at the client's
+	 * Makes an HTTP request with the given method to the URI at the given
 	 * base URL. Accepts on optional body argument for appropriate request methods.
+	 * If the server can't be reached, its endpoint is reported as down.
 	 *
-	 * @param method HTTP method
-	 * @param uri    URI path following base URL
-	 * @param body   request body data
+	 * @param baseUrl           server base URL
+	 * @param method            HTTP method
+	 * @param uri               URI path following base URL
+	 * @param body              request body data
+	 * @param offerCapabilities whether to offer the client's capabilities
 	 * @return future of response data in JSON
 	 */
-	private CompletableFuture<String> request(String method, String uri, RequestBody body)
+	private CompletableFuture<String> request(String baseUrl, String method, String uri, RequestBody body, boolean offerCapabilities)
 	{
 		CompletableFuture<String> result = new CompletableFuture<>();
-		Request request = new Request.Builder()
-			.url(getBaseUrl() + uri)
-			.method(method, body)
-			.build();
+		Request.Builder builder = new Request.Builder()
+			.url(baseUrl + uri)
+			.method(method, body);
+		if (offerCapabilities)
+		{
+			builder.header(CAPABILITIES_HEADER, capabilities);
+		}
+		Request request = builder.build();
 		client.newCall(request).enqueue(new Callback()
 		{
 			@Override
 			public void onFailure(@NonNull Call call, @NonNull IOException e)
 			{
 				log.error("Request failed: {}", String.valueOf(e));
+				endpoints.reportFailure(baseUrl);
+				result.completeExceptionally(e);
 			}
 
 			@Override
-			public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException
+			public void onResponse(@NonNull Call call, @NonNull Response response)
 			{
+				// OkHttp swallows anything thrown here, so every outcome must complete the future
 				try (ResponseBody bodyJson = response.body())
 				{
+					if (response.code() == TOO_MANY_REQUESTS || response.code() == SERVICE_UNAVAILABLE)
+					{
+						log.warn("Server is throttling requests: {}", response.code());
+						result.completeExceptionally(new ThrottledException(response.code(), parseRetryAfter(response.header("Retry-After"))));
+						return;
+					}
 					if (!response.isSuccessful())
 					{
-						throw new IOException(response.code() + ": " + bodyJson);
+						result.completeExceptionally(new IOException(response.code() + ": " + response.message()));
+						return;
 					}
 					if (bodyJson == null)
 					{
-						throw new RuntimeException("Response body is null: " + response);
+						result.completeExceptionally(new IOException("Response body is null: " + response));
+						return;
+					}
+					if (offerCapabilities)
+					{
+						capabilitiesExchanged = true;
+						final String serverCapabilities = response.header(CAPABILITIES_HEADER);
+						if (serverCapabilities != null && capabilitiesListener != null)
+						{
+							capabilitiesListener.accept(serverCapabilities);
+						}
 					}
 					result.complete(bodyJson.string());
 				}
+				catch (IOException e)
+				{
+					log.error("Response read failed: {}", String.valueOf(e));
+					result.completeExceptionally(e);
+				}
 			}
 		});
 		return result;
 	}
 
+	/**
+	 * Parses a Retry-After header, in either of its forms: a number of
+	 * seconds or an HTTP date.
+	 *
+	 * @param retryAfter Retry-After header value, or null
+	 * @return how long to wait, in ms
+	 */
+	private static long parseRetryAfter(String retryAfter)
+	{
+		if (retryAfter == null)
+		{
+			return DEFAULT_RETRY_AFTER;
+		}
+		try
+		{
+			return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+		}
+		catch (NumberFormatException e)
+		{
+			// Not a number of seconds, so try a date
+		}
+		try
+		{
+			final long date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+			return Math.max(0, date - System.currentTimeMillis());
+		}
+		catch (DateTimeParseException e)
+		{
+			return DEFAULT_RETRY_AFTER;
+		}
+	}
+
 	/**
 	 * Makes an HTTP GET request to the ping endpoint at the URL injected
 	 * from the plugin config. A future of the JSON response body is returned.
+	 * Requested fields are passed as a query parameter, which older servers
+	 * ignore and respond with every field. Until a ping succeeds, the
+	 * client's capabilities are offered in a header, which the server may
+	 * answer with its own.
+	 * <p>
+	 * If hedging is enabled and the selected endpoint is slow to respond or
+	 * fails, the ping is also sent to the next fastest endpoint, and the
+	 * first response wins.
 	 *
+	 * @param fields keys of the fields to request for each gimp, or null for all
 	 * @return future of response data in JSON
 	 */
-	public CompletableFuture<String> ping()
+	public CompletableFuture<String> ping(List<String> fields)
 	{
-		return request("GET", "/ping/" + namespace, null);
+		String uri = "/ping/" + namespace;
+		if (fields != null)
+		{
+			uri += "?fields=" + String.join(",", fields);
+		}
+		final CompletableFuture<String> primary = request(getBaseUrl(), "GET", uri, null, capabilities != null && !capabilitiesExchanged);
+		final String hedgeUrl = endpoints.getHedgeUrl();
+		if (hedgeUrl == null)
+		{
+			return primary;
+		}
+		final CompletableFuture<String> result = new CompletableFuture<>();
+		final AtomicBoolean hedged = new AtomicBoolean();
+		final AtomicInteger failures = new AtomicInteger();
+		final String hedgeUri = uri;
+		final BiConsumer<String, Throwable> settle = (data, ex) -> {
+			if (ex == null)
+			{
+				result.complete(data);
+			}
+			else if (failures.incrementAndGet() == 2)
+			{
+				result.completeExceptionally(ex);
+			}
+		};
+		final Runnable hedge = () -> {
+			if (!result.isDone() && hedged.compareAndSet(false, true))
+			{
+				log.debug("Hedging ping to {}", hedgeUrl);
+				request(hedgeUrl, "GET", hedgeUri, null, false).whenComplete(settle);
+			}
+		};
+		primary.whenComplete((data, ex) -> {
+			settle.accept(data, ex);
+			if (ex != null)
+			{
+				hedge.run();
+			}
+		});
+		CompletableFuture.delayedExecutor(endpoints.getHedgeDelay(), TimeUnit.MILLISECONDS).execute(hedge);
+		return result;
 	}
 
 	/**
@@ -124,6 +266,6 @@ public class HttpClient extends RequestClient
 	public CompletableFuture<String> broadcast(String dataJson)
 	{
 		RequestBody body = RequestBody.create(JSON, dataJson);
-		return request("POST", "/broadcast/" + namespace, body);
+		return request(getBaseUrl(), "POST", "/broadcast/" + namespace, body, false);
 	}
 }
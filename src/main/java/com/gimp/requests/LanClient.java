@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exchanges updates directly with group members on the local network over
+ * UDP multicast, without a round trip to the server. Peers find each other
+ * by joining the same multicast group and port, and ignore anything not
+ * sent for their group's room.
+ * <p>
+ * A broadcast is a single datagram to every peer. A ping asks every peer
+ * for the latest data it has broadcast about itself, and collects the
+ * replies for a short window. Replies are multicast too, addressed to the
+ * pinging peer, since clients on the same machine share the port and a
+ * unicast reply would reach only one of them. Datagrams are never resent, and receivers
+ * drop any that arrive after newer data by its sequence number.
+ * <p>
+ * Multicast loops back, so peers on the same machine see each other too.
+ */
+@Slf4j
+public class LanClient extends RequestClient
+{
+	/* Administratively scoped, so it never leaves the site */
+	private static final String MULTICAST_GROUP = "239.255.71.77";
+
+	/* Fits in a single Ethernet frame, larger data goes through the server */
+	private static final int MAX_DATAGRAM_SIZE = 1400;
+
+	/* How long to collect ping replies, far longer than any LAN round trip */
+	private static final long PING_WINDOW = 100;
+
+	private static final String TYPE_KEY = "type";
+
+	private static final String ROOM_KEY = "room";
+
+	private static final String FROM_KEY = "from";
+
+	private static final String TO_KEY = "to";
+
+	private static final String ID_KEY = "id";
+
+	private static final String DATA_KEY = "data";
+
+	private static final String NAME_KEY = "name";
+
+	private static final String TYPE_BROADCAST = "broadcast";
+
+	private static final String TYPE_PING = "ping";
+
+	private static final String TYPE_PONG = "pong";
+
+	private final InetSocketAddress groupAddress;
+
+	private final int port;
+
+	private final Gson gson;
+
+	/* Tells our own datagrams apart from those of peers, since they loop back */
+	private final long peerId = ThreadLocalRandom.current().nextLong();
+
+	private final ExecutorService reader = Executors.newSingleThreadExecutor();
+
+	private volatile DatagramChannel channel;
+
+	/* Set once stopped, after which the channel is never opened again */
+	private volatile boolean stopped;
+
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	/* Replies collected for each ping in its window, by ping ID */
+	private final Map<Integer, JsonObject> pings = new ConcurrentHashMap<>();
+
+	/* Latest data we broadcast, merged per name, to answer the pings of peers with */
+	private final Map<String, JsonObject> sent = new ConcurrentHashMap<>();
+
+	public LanClient(String namespace, int port, Gson gson)
+	{
+		this.namespace = namespace;
+		this.port = port;
+		this.gson = gson;
+		groupAddress = new InetSocketAddress(MULTICAST_GROUP, port);
+	}
+
+	/**
+	 * Opens the channel if it isn't open yet, joining the multicast group
+	 * on every interface that supports it, including loopback.
+	 *
+	 * @return open channel
+	 * @throws IOException if stopped, or the channel can't be opened or joined anywhere
+	 */
+	private synchronized DatagramChannel open() throws IOException
+	{
+		if (stopped)
+		{
+			// Nothing would read a reopened channel
+			throw new IOException("LAN client stopped");
+		}
+		if (channel != null)
+		{
+			return channel;
+		}
+		final DatagramChannel openChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+		try
+		{
+			// Several clients on one machine share the port
+			openChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			openChannel.bind(new InetSocketAddress(port));
+			openChannel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+			// Never route past the local network
+			openChannel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 1);
+			final InetAddress group = groupAddress.getAddress();
+			int joined = 0;
+			for (NetworkInterface iface : Collections.list(NetworkInterface.getNetworkInterfaces()))
+			{
+				if (!iface.isUp() || !iface.supportsMulticast())
+				{
+					continue;
+				}
+				try
+				{
+					openChannel.join(group, iface);
+					joined++;
+				}
+				catch (IOException e)
+				{
+					log.debug("Can't join multicast group on {}: {}", iface.getName(), String.valueOf(e));
+				}
+			}
+			if (joined == 0)
+			{
+				throw new IOException("No interface to join the multicast group on");
+			}
+		}
+		catch (IOException e)
+		{
+			openChannel.close();
+			throw e;
+		}
+		channel = openChannel;
+		return openChannel;
+	}
+
+	/**
+	 * Starts passing the data of every broadcast received from a peer to
+	 * the listener, and answering the pings of peers.
+	 *
+	 * @param broadcastListener listener for broadcast data in JSON
+	 */
+	public void start(Consumer<String> broadcastListener)
+	{
+		if (stopped)
+		{
+			return;
+		}
+		reader.execute(() -> {
+			try
+			{
+				final DatagramChannel openChannel = open();
+				final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+				while (channel == openChannel)
+				{
+					buffer.clear();
+					openChannel.receive(buffer);
+					buffer.flip();
+					onDatagram(StandardCharsets.UTF_8.decode(buffer).toString(), broadcastListener);
+				}
+			}
+			catch (ClosedChannelException e)
+			{
+				log.debug("LAN channel closed");
+			}
+			catch (Exception e)
+			{
+				log.warn("LAN channel error: {}", String.valueOf(e));
+			}
+		});
+	}
+
+	/**
+	 * Leaves the multicast group and stops the reader. Anything sent
+	 * afterwards fails, rather than reopening the channel.
+	 */
+	public void stop()
+	{
+		final DatagramChannel openChannel;
+		synchronized (this)
+		{
+			stopped = true;
+			openChannel = channel;
+			channel = null;
+		}
+		if (openChannel != null)
+		{
+			try
+			{
+				openChannel.close();
+			}
+			catch (IOException e)
+			{
+				log.debug("LAN channel close error: {}", String.valueOf(e));
+			}
+		}
+		reader.shutdown();
+	}
+
+	/**
+	 * Asks every peer for its latest data, completing with the replies
+	 * that arrive within the ping window. The field list is a hint that
+	 * peers ignore, like servers may.
+	 *
+	 * @param fields keys of the fields to request for each gimp, or null for all
+	 * @return future of name => gimp data in JSON
+	 */
+	@Override
+	public CompletableFuture<String> ping(List<String> fields)
+	{
+		final int id = nextId.incrementAndGet();
+		final JsonObject frame = makeFrame(TYPE_PING);
+		frame.addProperty(ID_KEY, id);
+		final JsonObject gimps = new JsonObject();
+		pings.put(id, gimps);
+		final CompletableFuture<String> result = new CompletableFuture<>();
+		if (!send(frame))
+		{
+			pings.remove(id);
+			result.completeExceptionally(new IOException("LAN channel unavailable"));
+			return result;
+		}
+		CompletableFuture.delayedExecutor(PING_WINDOW, TimeUnit.MILLISECONDS).execute(() -> {
+			pings.remove(id);
+			synchronized (gimps)
+			{
+				result.complete(gimps.toString());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Sends the broadcast data to every peer in a single datagram. There is
+	 * no ack, so the result only says whether it went out.
+	 *
+	 * @param dataJson broadcast data in JSON
+	 * @return future of an empty ack
+	 */
+	@Override
+	public CompletableFuture<String> broadcast(String dataJson)
+	{
+		final JsonObject data = gson.fromJson(dataJson, JsonObject.class);
+		if (data.has(NAME_KEY))
+		{
+			// Later data only ever overwrites what it carries, like on the receiving end
+			sent.compute(data.get(NAME_KEY).getAsString(), (name, merged) -> {
+				final JsonObject next = merged != null ? merged.deepCopy() : new JsonObject();
+				data.entrySet().forEach(entry -> next.add(entry.getKey(), entry.getValue()));
+				return next;
+			});
+		}
+		final JsonObject frame = makeFrame(TYPE_BROADCAST);
+		frame.add(DATA_KEY, data);
+		return send(frame)
+			? CompletableFuture.completedFuture("{}")
+			: CompletableFuture.failedFuture(new IOException("LAN datagram not sent"));
+	}
+
+	private JsonObject makeFrame(String type)
+	{
+		final JsonObject frame = new JsonObject();
+		frame.addProperty(TYPE_KEY, type);
+		frame.addProperty(ROOM_KEY, namespace);
+		frame.addProperty(FROM_KEY, peerId);
+		return frame;
+	}
+
+	private boolean send(JsonObject frame)
+	{
+		final byte[] bytes = gson.toJson(frame).getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_DATAGRAM_SIZE)
+		{
+			return false;
+		}
+		try
+		{
+			return open().send(ByteBuffer.wrap(bytes), groupAddress) == bytes.length;
+		}
+		catch (IOException e)
+		{
+			log.debug("LAN send error: {}", String.valueOf(e));
+			return false;
+		}
+	}
+
+	private void onDatagram(String text, Consumer<String> broadcastListener)
+	{
+		final JsonObject frame;
+		try
+		{
+			frame = gson.fromJson(text, JsonObject.class);
+		}
+		catch (Exception e)
+		{
+			log.debug("Malformed LAN datagram: {}", String.valueOf(e));
+			return;
+		}
+		if (frame == null || !frame.has(TYPE_KEY) || !frame.has(ROOM_KEY) || !frame.has(FROM_KEY)
+			|| !namespace.equals(frame.get(ROOM_KEY).getAsString()) || frame.get(FROM_KEY).getAsLong() == peerId)
+		{
+			return;
+		}
+		final JsonElement data = frame.get(DATA_KEY);
+		switch (frame.get(TYPE_KEY).getAsString())
+		{
+			case TYPE_BROADCAST:
+				if (data != null && data.isJsonObject())
+				{
+					broadcastListener.accept(data.toString());
+				}
+				break;
+			case TYPE_PING:
+				if (sent.isEmpty())
+				{
+					break;
+				}
+				final JsonObject gimps = new JsonObject();
+				sent.forEach(gimps::add);
+				final JsonObject pong = makeFrame(TYPE_PONG);
+				pong.add(TO_KEY, frame.get(FROM_KEY));
+				pong.add(ID_KEY, frame.get(ID_KEY));
+				pong.add(DATA_KEY, gimps);
+				send(pong);
+				break;
+			case TYPE_PONG:
+				if (!frame.has(TO_KEY) || frame.get(TO_KEY).getAsLong() != peerId || !frame.has(ID_KEY))
+				{
+					break;
+				}
+				final JsonObject replies = pings.get(frame.get(ID_KEY).getAsInt());
+				if (replies != null && data != null && data.isJsonObject())
+				{
+					synchronized (replies)
+					{
+						data.getAsJsonObject().entrySet().forEach(entry -> replies.add(entry.getKey(), entry.getValue()));
+					}
+				}
+				break;
+			default:
+				log.debug("Unknown LAN datagram type: {}", frame.get(TYPE_KEY));
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A RequestClient over a persistent connection, through which the server
+ * also pushes broadcasts. Listeners are kept by the client rather than the
+ * underlying connection, so they survive reconnects.
+ */
+public abstract class PersistentClient extends RequestClient
+{
+	/* Base URL of the endpoint of the latest connect */
+	@Getter
+	protected volatile String connectedUrl;
+
+	/* Called once the connection is open and the room is joined */
+	@Setter
+	protected Runnable connectListener;
+
+	/* Called when an open connection is lost */
+	@Setter
+	protected Runnable disconnectListener;
+
+	/* Called when a connection attempt fails */
+	@Setter
+	protected Runnable connectErrorListener;
+
+	/* Receives the JSON data of every broadcast pushed by the server */
+	@Setter
+	protected Consumer<String> broadcastListener;
+
+	/* Supplies name => last seen sequence number to resume the session with on connect */
+	@Setter
+	protected Supplier<Map<String, Long>> resumeRequest;
+
+	/* Receives the server's reply to a session resume */
+	@Setter
+	protected Consumer<String> resumeListener;
+
+	/* Capabilities JSON offered to the server on connect, none if unset */
+	@Setter
+	protected String capabilities;
+
+	/* Receives the server's capabilities JSON, if it replies to the offer */
+	@Setter
+	protected Consumer<String> capabilitiesListener;
+
+	/**
+	 * Connects to the server at the base URL and joins the group's room.
+	 */
+	abstract public void connect();
+
+	/**
+	 * Disconnects the client from the server.
+	 */
+	abstract public void disconnect();
+
+	/**
+	 * Checks if the client is connected to the server.
+	 *
+	 * @return whether the client is connected
+	 */
+	abstract public boolean isConnected();
+
+	/**
+	 * Gets the last seen sequence numbers to resume the session with.
+	 *
+	 * @return map: name => last seen sequence number, or null if there's nothing to resume
+	 */
+	protected Map<String, Long> buildResumeRequest()
+	{
+		final Map<String, Long> lastSeen = resumeRequest != null ? resumeRequest.get() : null;
+		return lastSeen == null || lastSeen.isEmpty() ? null : lastSeen;
+	}
+
+	/**
+	 * Calls the listener if one is set.
+	 *
+	 * @param listener listener to call
+	 */
+	protected static void fire(Runnable listener)
+	{
+		if (listener != null)
+		{
+			listener.run();
+		}
+	}
+
+	/**
+	 * Passes the JSON data to the listener if one is set.
+	 *
+	 * @param listener listener to pass the data to
+	 * @param dataJson data in JSON
+	 */
+	protected static void fire(Consumer<String> listener, String dataJson)
+	{
+		if (listener != null)
+		{
+			listener.accept(dataJson);
+		}
+	}
+}
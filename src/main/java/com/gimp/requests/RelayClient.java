@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import static com.gimp.requests.RelayConnection.*;
+
+/**
+ * Live connection through another client on the same machine that hosts a
+ * {@link RelayHost}, instead of to the server. Requests are relayed over the
+ * host's connection, and the host pushes every broadcast it receives.
+ * <p>
+ * A session resume is answered by the host with a full snapshot. If there
+ * is no host, or it's hosting for another group, connecting fails.
+ */
+@Slf4j
+public class RelayClient extends PersistentClient
+{
+	/* Anything listening on loopback answers right away */
+	private static final int CONNECT_TIMEOUT = 1000;
+
+	final private int port;
+
+	final private Gson gson;
+
+	/* Whether a connection is open or being opened */
+	final private AtomicBoolean running = new AtomicBoolean();
+
+	private volatile RelayConnection connection;
+
+	private volatile boolean joined;
+
+	/* Whether the host turned down the latest join, e.g. since it hosts another group */
+	@Getter
+	private volatile boolean rejected;
+
+	final private AtomicInteger nextId = new AtomicInteger();
+
+	/* Requests awaiting an ack from the host, by request ID */
+	final private Map<Integer, CompletableFuture<String>> pendingAcks = new ConcurrentHashMap<>();
+
+	public RelayClient(String namespace, int port, Gson gson)
+	{
+		this.namespace = namespace;
+		this.port = port;
+		this.gson = gson;
+		connectedUrl = "relay://localhost:" + port;
+	}
+
+	/**
+	 * Connects to the relay host and joins the group's room, on a thread
+	 * that then reads frames until the connection closes.
+	 */
+	@Override
+	public void connect()
+	{
+		if (!running.compareAndSet(false, true))
+		{
+			return;
+		}
+		final Thread thread = new Thread(this::run, "gimp-relay-client");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run()
+	{
+		try (Socket socket = new Socket())
+		{
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+			final RelayConnection relay = new RelayConnection(socket, gson);
+			connection = relay;
+			final JsonObject join = new JsonObject();
+			join.addProperty(TYPE_KEY, TYPE_JOIN);
+			join.addProperty(ROOM_KEY, namespace);
+			join.addProperty(RESUME_KEY, buildResumeRequest() != null);
+			relay.send(join);
+			final JsonObject reply = relay.read();
+			if (reply == null || !TYPE_JOINED.equals(reply.get(TYPE_KEY).getAsString()))
+			{
+				log.debug("Relay host rejected join");
+				rejected = true;
+				fire(connectErrorListener);
+				return;
+			}
+			joined = true;
+			rejected = false;
+			if (reply.has(CAPABILITIES_KEY))
+			{
+				fire(capabilitiesListener, reply.get(CAPABILITIES_KEY).getAsString());
+			}
+			log.debug("Joined relay on port {}", port);
+			fire(connectListener);
+			JsonObject frame;
+			while ((frame = relay.read()) != null)
+			{
+				onFrame(frame);
+			}
+		}
+		catch (IOException e)
+		{
+			if (!joined)
+			{
+				log.debug("No relay host: {}", String.valueOf(e));
+				fire(connectErrorListener);
+			}
+		}
+		finally
+		{
+			final boolean wasJoined = joined;
+			joined = false;
+			connection = null;
+			for (CompletableFuture<String> pending : pendingAcks.values())
+			{
+				pending.completeExceptionally(new IOException("Relay connection closed"));
+			}
+			pendingAcks.clear();
+			running.set(false);
+			if (wasJoined)
+			{
+				fire(disconnectListener);
+			}
+		}
+	}
+
+	private void onFrame(JsonObject frame)
+	{
+		switch (frame.get(TYPE_KEY).getAsString())
+		{
+			case TYPE_ACK:
+				final CompletableFuture<String> response = frame.has(ID_KEY) ? pendingAcks.remove(frame.get(ID_KEY).getAsInt()) : null;
+				if (response == null)
+				{
+					break;
+				}
+				if (frame.has(RETRY_AFTER_KEY))
+				{
+					response.completeExceptionally(new ThrottledException(frame.get(CODE_KEY).getAsInt(), frame.get(RETRY_AFTER_KEY).getAsLong()));
+				}
+				else if (frame.has(ERROR_KEY))
+				{
+					response.completeExceptionally(new IOException(frame.get(ERROR_KEY).getAsString()));
+				}
+				else
+				{
+					response.complete(frame.get(DATA_KEY).getAsString());
+				}
+				break;
+			case TYPE_BROADCAST:
+				if (frame.has(DATA_KEY) && frame.get(DATA_KEY).isJsonObject())
+				{
+					fire(broadcastListener, frame.get(DATA_KEY).toString());
+				}
+				break;
+			case TYPE_RESUME:
+				fire(resumeListener, frame.get(DATA_KEY).getAsString());
+				break;
+			default:
+				log.debug("Unknown relay frame type: {}", frame.get(TYPE_KEY));
+		}
+	}
+
+	/**
+	 * Disconnects from the relay host.
+	 */
+	@Override
+	public void disconnect()
+	{
+		final RelayConnection relay = connection;
+		if (relay != null)
+		{
+			relay.close();
+		}
+	}
+
+	@Override
+	public boolean isConnected()
+	{
+		return joined;
+	}
+
+	/**
+	 * Relays a ping for the given fields through the host, which shares
+	 * it with any other guest's ping for the same fields.
+	 *
+	 * @param fields keys of the fields to request for each gimp, or null for all
+	 * @return future of ping data in JSON
+	 */
+	@Override
+	public CompletableFuture<String> ping(List<String> fields)
+	{
+		final JsonObject frame = new JsonObject();
+		if (fields != null)
+		{
+			final JsonArray keys = new JsonArray();
+			fields.forEach(keys::add);
+			frame.add(FIELDS_KEY, keys);
+		}
+		return request(TYPE_PING, frame);
+	}
+
+	/**
+	 * Relays the broadcast data through the host.
+	 *
+	 * @param dataJson request data in JSON
+	 * @return future of the server's ack data in JSON
+	 */
+	@Override
+	public CompletableFuture<String> broadcast(String dataJson)
+	{
+		final JsonObject frame = new JsonObject();
+		frame.add(DATA_KEY, gson.fromJson(dataJson, JsonObject.class));
+		return request(TYPE_BROADCAST, frame);
+	}
+
+	private CompletableFuture<String> request(String type, JsonObject frame)
+	{
+		final CompletableFuture<String> response = new CompletableFuture<>();
+		final RelayConnection relay = connection;
+		if (relay == null || !joined)
+		{
+			response.completeExceptionally(new IOException("Relay is not joined"));
+			return response;
+		}
+		final int id = nextId.incrementAndGet();
+		frame.addProperty(TYPE_KEY, type);
+		frame.addProperty(ID_KEY, id);
+		pendingAcks.put(id, response);
+		if (!relay.send(frame))
+		{
+			pendingAcks.remove(id);
+			response.completeExceptionally(new IOException("Relay connection closed"));
+		}
+		return response;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One end of a loopback connection between a relay host and a guest.
+ * Frames are JSON objects, one per line, with a "type" and, for requests
+ * and their acks, an "id".
+ */
+@Slf4j
+class RelayConnection implements Closeable
+{
+	static final String TYPE_KEY = "type";
+
+	static final String ID_KEY = "id";
+
+	static final String ROOM_KEY = "room";
+
+	static final String DATA_KEY = "data";
+
+	static final String FIELDS_KEY = "fields";
+
+	static final String RESUME_KEY = "resume";
+
+	static final String CAPABILITIES_KEY = "capabilities";
+
+	static final String ERROR_KEY = "error";
+
+	static final String CODE_KEY = "code";
+
+	static final String RETRY_AFTER_KEY = "retryAfter";
+
+	static final String TYPE_JOIN = "join";
+
+	static final String TYPE_JOINED = "joined";
+
+	static final String TYPE_REJECTED = "rejected";
+
+	static final String TYPE_PING = "ping";
+
+	static final String TYPE_BROADCAST = "broadcast";
+
+	static final String TYPE_RESUME = "resume";
+
+	static final String TYPE_ACK = "ack";
+
+	final private Socket socket;
+
+	final private BufferedReader reader;
+
+	final private BufferedWriter writer;
+
+	final private Gson gson;
+
+	RelayConnection(Socket socket, Gson gson) throws IOException
+	{
+		this.socket = socket;
+		this.gson = gson;
+		socket.setTcpNoDelay(true);
+		reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Sends a frame, closing the connection if it can't be written.
+	 *
+	 * @param frame frame to send
+	 * @return whether the frame was sent
+	 */
+	synchronized boolean send(JsonObject frame)
+	{
+		try
+		{
+			writer.write(gson.toJson(frame));
+			writer.newLine();
+			writer.flush();
+			return true;
+		}
+		catch (IOException e)
+		{
+			log.debug("Relay send error: {}", String.valueOf(e));
+			close();
+			return false;
+		}
+	}
+
+	/**
+	 * Blocks until the next well-formed frame arrives.
+	 *
+	 * @return next frame, or null once the connection is closed
+	 * @throws IOException if the connection fails
+	 */
+	JsonObject read() throws IOException
+	{
+		String line;
+		while ((line = reader.readLine()) != null)
+		{
+			try
+			{
+				final JsonObject frame = gson.fromJson(line, JsonObject.class);
+				if (frame != null && frame.has(TYPE_KEY))
+				{
+					return frame;
+				}
+			}
+			catch (JsonParseException e)
+			{
+				log.debug("Malformed relay frame: {}", String.valueOf(e));
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close()
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException e)
+		{
+			log.debug("Relay close error: {}", String.valueOf(e));
+		}
+	}
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import static com.gimp.requests.RelayConnection.*;
+
+/**
+ * Shares this client's connection to the server with other clients on the
+ * same machine, which attach over loopback with a {@link RelayClient}. Their
+ * requests go upstream over this client's connection, and each broadcast
+ * the server pushes is received once and fanned out to every guest.
+ * <p>
+ * Broadcasts from a guest are also delivered to this client and the other
+ * guests directly, since the server doesn't send a broadcast back to the
+ * connection it came from. Concurrent pings for the same fields share a
+ * single upstream request.
+ */
+@Slf4j
+public class RelayHost
+{
+	/* More than anyone runs on one machine */
+	private static final int MAX_GUESTS = 8;
+
+	/* Key of in-flight pings for all fields */
+	private static final List<String> ALL_FIELDS = Collections.emptyList();
+
+	final private String namespace;
+
+	final private ServerSocket serverSocket;
+
+	final private Gson gson;
+
+	final private ExecutorService executor = Executors.newCachedThreadPool();
+
+	final private Set<RelayConnection> guests = ConcurrentHashMap.newKeySet();
+
+	/* In-flight upstream pings by requested fields, shared between guests */
+	final private Map<List<String>, CompletableFuture<String>> pings = new ConcurrentHashMap<>();
+
+	/* Sends a guest's stamped broadcast data upstream, returning the server's ack */
+	@Setter
+	private volatile Function<String, CompletableFuture<String>> broadcastHandler;
+
+	/* Sends a ping upstream for the given fields, or all fields if null */
+	@Setter
+	private volatile Function<List<String>, CompletableFuture<String>> pingHandler;
+
+	/* Receives the broadcasts of guests, like the ones pushed by the server */
+	@Setter
+	private volatile Consumer<String> broadcastListener;
+
+	/* Supplies the server's capabilities JSON for joining guests, or null if unknown */
+	@Setter
+	private volatile Supplier<String> capabilities;
+
+	private RelayHost(String namespace, ServerSocket serverSocket, Gson gson)
+	{
+		this.namespace = namespace;
+		this.serverSocket = serverSocket;
+		this.gson = gson;
+	}
+
+	/**
+	 * Starts hosting the relay on the loopback port, unless another client
+	 * on this machine already does.
+	 *
+	 * @param namespace group's room
+	 * @param port      loopback port
+	 * @param gson      Gson
+	 * @return started relay host, or null if the port is taken
+	 */
+	public static RelayHost bind(String namespace, int port, Gson gson)
+	{
+		final ServerSocket serverSocket;
+		try
+		{
+			serverSocket = new ServerSocket();
+			try
+			{
+				serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			}
+			catch (IOException e)
+			{
+				serverSocket.close();
+				throw e;
+			}
+		}
+		catch (BindException e)
+		{
+			return null;
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to host relay: {}", String.valueOf(e));
+			return null;
+		}
+		log.debug("Hosting relay on port {}", port);
+		final RelayHost host = new RelayHost(namespace, serverSocket, gson);
+		host.executor.execute(host::accept);
+		return host;
+	}
+
+	private void accept()
+	{
+		while (!serverSocket.isClosed())
+		{
+			final Socket socket;
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch (IOException e)
+			{
+				break;
+			}
+			executor.execute(() -> serve(socket));
+		}
+	}
+
+	/**
+	 * Serves a guest until it disconnects.
+	 *
+	 * @param socket guest's socket
+	 */
+	private void serve(Socket socket)
+	{
+		try (RelayConnection guest = new RelayConnection(socket, gson))
+		{
+			final JsonObject join = guest.read();
+			if (join == null || !TYPE_JOIN.equals(join.get(TYPE_KEY).getAsString()) || !join.has(ROOM_KEY)
+				|| !namespace.equals(join.get(ROOM_KEY).getAsString()) || guests.size() >= MAX_GUESTS)
+			{
+				// e.g. a client of another group, which connects to the server itself instead
+				final JsonObject rejected = new JsonObject();
+				rejected.addProperty(TYPE_KEY, TYPE_REJECTED);
+				guest.send(rejected);
+				return;
+			}
+			guests.add(guest);
+			try
+			{
+				serveJoined(guest, join);
+			}
+			finally
+			{
+				guests.remove(guest);
+			}
+		}
+		catch (Exception e)
+		{
+			log.debug("Relay guest error: {}", String.valueOf(e));
+		}
+	}
+
+	/**
+	 * Welcomes a joined guest, then serves its requests until it disconnects.
+	 *
+	 * @param guest joined guest
+	 * @param join  guest's join frame
+	 * @throws IOException if the connection fails
+	 */
+	private void serveJoined(RelayConnection guest, JsonObject join) throws IOException
+	{
+		final JsonObject joined = new JsonObject();
+		joined.addProperty(TYPE_KEY, TYPE_JOINED);
+		final Supplier<String> capabilitiesSupplier = capabilities;
+		final String capabilitiesJson = capabilitiesSupplier != null ? capabilitiesSupplier.get() : null;
+		if (capabilitiesJson != null)
+		{
+			joined.addProperty(CAPABILITIES_KEY, capabilitiesJson);
+		}
+		guest.send(joined);
+		if (join.has(RESUME_KEY) && join.get(RESUME_KEY).getAsBoolean())
+		{
+			resume(guest);
+		}
+		JsonObject frame;
+		while ((frame = guest.read()) != null)
+		{
+			onFrame(guest, frame);
+		}
+	}
+
+	/**
+	 * Resumes a guest's session with a full snapshot, since the host's
+	 * own session says nothing about what the guest has missed.
+	 *
+	 * @param guest guest to resume
+	 */
+	private void resume(RelayConnection guest)
+	{
+		ping(null).thenAccept(result -> {
+			final JsonObject reply = new JsonObject();
+			reply.addProperty("snapshot", true);
+			reply.add("gimps", gson.fromJson(result, JsonElement.class));
+			final JsonObject frame = new JsonObject();
+			frame.addProperty(TYPE_KEY, TYPE_RESUME);
+			frame.addProperty(DATA_KEY, gson.toJson(reply));
+			guest.send(frame);
+		});
+	}
+
+	private void onFrame(RelayConnection guest, JsonObject frame)
+	{
+		final int id = frame.has(ID_KEY) ? frame.get(ID_KEY).getAsInt() : 0;
+		switch (frame.get(TYPE_KEY).getAsString())
+		{
+			case TYPE_PING:
+				List<String> fields = null;
+				if (frame.has(FIELDS_KEY) && frame.get(FIELDS_KEY).isJsonArray())
+				{
+					fields = new ArrayList<>();
+					for (JsonElement field : frame.getAsJsonArray(FIELDS_KEY))
+					{
+						fields.add(field.getAsString());
+					}
+				}
+				ack(guest, id, ping(fields));
+				break;
+			case TYPE_BROADCAST:
+				final JsonElement data = frame.get(DATA_KEY);
+				if (data == null || !data.isJsonObject())
+				{
+					break;
+				}
+				final String dataJson = data.toString();
+				publish(dataJson, guest);
+				final Consumer<String> listener = broadcastListener;
+				if (listener != null)
+				{
+					listener.accept(dataJson);
+				}
+				final Function<String, CompletableFuture<String>> handler = broadcastHandler;
+				ack(guest, id, handler != null ? handler.apply(dataJson) : unavailable());
+				break;
+			default:
+				log.debug("Unknown relay frame type: {}", frame.get(TYPE_KEY));
+		}
+	}
+
+	/**
+	 * Sends a ping upstream, or joins one in flight for the same fields.
+	 *
+	 * @param fields keys of the fields to request, or null for all
+	 * @return future of the ping data in JSON
+	 */
+	private CompletableFuture<String> ping(List<String> fields)
+	{
+		final List<String> key = fields == null ? ALL_FIELDS : fields;
+		final CompletableFuture<String> inFlight = pings.get(key);
+		if (inFlight != null)
+		{
+			return inFlight;
+		}
+		final CompletableFuture<String> created = new CompletableFuture<>();
+		final CompletableFuture<String> existing = pings.putIfAbsent(key, created);
+		if (existing != null)
+		{
+			return existing;
+		}
+		final Function<List<String>, CompletableFuture<String>> handler = pingHandler;
+		(handler != null ? handler.apply(fields) : unavailable()).whenComplete((result, ex) -> {
+			pings.remove(key, created);
+			if (ex != null)
+			{
+				created.completeExceptionally(ex);
+			}
+			else
+			{
+				created.complete(result);
+			}
+		});
+		return created;
+	}
+
+	private static CompletableFuture<String> unavailable()
+	{
+		return CompletableFuture.failedFuture(new IOException("Relay host is not connected"));
+	}
+
+	/**
+	 * Acks a guest's request once the upstream request completes, passing
+	 * on how long to wait if the server is throttling us.
+	 *
+	 * @param guest    guest that made the request
+	 * @param id       request ID
+	 * @param upstream upstream request
+	 */
+	private void ack(RelayConnection guest, int id, CompletableFuture<String> upstream)
+	{
+		upstream.whenComplete((result, ex) -> {
+			final JsonObject frame = new JsonObject();
+			frame.addProperty(TYPE_KEY, TYPE_ACK);
+			frame.addProperty(ID_KEY, id);
+			final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+			if (cause instanceof ThrottledException)
+			{
+				frame.addProperty(CODE_KEY, 429);
+				frame.addProperty(RETRY_AFTER_KEY, ((ThrottledException) cause).getRetryAfter());
+			}
+			else if (cause != null)
+			{
+				frame.addProperty(ERROR_KEY, String.valueOf(cause.getMessage()));
+			}
+			else
+			{
+				frame.addProperty(DATA_KEY, result);
+			}
+			guest.send(frame);
+		});
+	}
+
+	/**
+	 * Pushes broadcast data to every guest but the one it came from.
+	 *
+	 * @param dataJson broadcast data in JSON
+	 * @param from     guest the data came from, or null
+	 */
+	private void publish(String dataJson, RelayConnection from)
+	{
+		if (guests.isEmpty())
+		{
+			return;
+		}
+		final JsonObject frame = new JsonObject();
+		frame.addProperty(TYPE_KEY, TYPE_BROADCAST);
+		frame.add(DATA_KEY, gson.fromJson(dataJson, JsonElement.class));
+		for (RelayConnection guest : guests)
+		{
+			if (guest != from)
+			{
+				guest.send(frame);
+			}
+		}
+	}
+
+	/**
+	 * Pushes broadcast data to every guest.
+	 *
+	 * @param dataJson broadcast data in JSON
+	 */
+	public void publish(String dataJson)
+	{
+		publish(dataJson, null);
+	}
+
+	/**
+	 * Stops hosting, disconnecting every guest. Guests then connect to the
+	 * server themselves, or one of them takes over hosting.
+	 */
+	public void close()
+	{
+		try
+		{
+			serverSocket.close();
+		}
+		catch (IOException e)
+		{
+			log.debug("Relay host close error: {}", String.valueOf(e));
+		}
+		for (RelayConnection guest : guests)
+		{
+			guest.close();
+		}
+		guests.clear();
+		executor.shutdownNow();
+	}
+}
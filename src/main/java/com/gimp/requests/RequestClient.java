@@ -24,67 +24,45 @@
  */
 package com.gimp.requests;
 
-import com.gimp.GimPluginConfig;
-import java.net.URL;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public abstract class RequestClient
 {
-	public GimPluginConfig config;
+	public ServerEndpoints endpoints;
 
 	/* Used to join a server-side socket room and/or namespace HTTP requests. */
 	public String namespace;
 
 	/**
-	 * Gets the base URL from the address injected from the plugin config.
+	 * Gets the base URL of the selected server endpoint.
 	 *
 	 * @return server base URL
 	 */
 	public String getBaseUrl()
 	{
-		String configServerAddress = config.serverAddress();
-		// Remove trailing slash(es) if exists
-		String trailingSlashes = "/+$";
-		configServerAddress = configServerAddress.replaceAll(trailingSlashes, "");
-		if (!configServerAddress.contains("http"))
-		{
-			return "http://" + configServerAddress;
-		}
-		return configServerAddress;
+		return endpoints.getBaseUrl();
 	}
 
 	/**
-	 * Validates the URL from the config server address.
+	 * Checks if there is a valid server endpoint to use.
 	 *
 	 * @return whether the URL is valid
 	 */
 	public boolean validateUrl()
 	{
-		final URL url;
-		if (config.serverAddress().isEmpty())
-		{
-			return false;
-		}
-		try
-		{
-			url = new URL(getBaseUrl());
-		}
-		catch (Exception e)
-		{
-			return false;
-		}
-		// URL must use HTTP/S protocol
-		return url.getProtocol().contains("http");
+		return endpoints.isValid();
 	}
 
 	/**
 	 * Sends a /ping request or emits "ping" to the server.
 	 *
+	 * @param fields keys of the fields to request for each gimp, or null for all
 	 * @return future of response data in JSON
 	 */
-	abstract public CompletableFuture<String> ping();
+	abstract public CompletableFuture<String> ping(List<String> fields);
 
 	/**
 	 * Send a /broadcast request or emits "broadcast" to the server.
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.gimp.GimPluginConfig;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * The server endpoints from the plugin config, which may list several
+ * comma-separated addresses, e.g. one per region. Addresses are parsed on
+ * first use and again only once invalidated by a config change, rather
+ * than on every request. Endpoints are probed for
+ * their round trip time, and requests go to the fastest healthy one, failing
+ * over to the next whenever it stops responding.
+ */
+@Slf4j
+public class ServerEndpoints
+{
+	/* How long an endpoint that failed is skipped for, in ms */
+	private static final long DOWN_PERIOD = 30_000;
+
+	/* A faster endpoint must beat the selected one by this much to take over, so we don't flap */
+	private static final double SWITCH_RATIO = 0.8;
+
+	/* Weight of a new sample in the smoothed round trip time */
+	private static final double RTT_WEIGHT = 0.3;
+
+	private static final long MIN_HEDGE_DELAY = 200;
+
+	final private GimPluginConfig config;
+
+	final private OkHttpClient client;
+
+	/* Whether the address list must be parsed again before use */
+	private volatile boolean stale = true;
+
+	private volatile List<Endpoint> endpoints = Collections.emptyList();
+
+	private volatile Endpoint selected;
+
+	/* Called when probing or a failure switches to another endpoint */
+	@Setter
+	private Runnable selectionListener;
+
+	public ServerEndpoints(GimPluginConfig config, OkHttpClient client)
+	{
+		this.config = config;
+		this.client = client;
+	}
+
+	/**
+	 * Parses the address list again on next use. Should be called whenever
+	 * the server address config changes.
+	 */
+	public void invalidate()
+	{
+		stale = true;
+	}
+
+	/**
+	 * Gets the endpoints, parsing the address list first if it was
+	 * invalidated.
+	 *
+	 * @return endpoints, in the order they were listed
+	 */
+	private List<Endpoint> getEndpoints()
+	{
+		if (stale)
+		{
+			synchronized (this)
+			{
+				if (stale)
+				{
+					endpoints = parse(config.serverAddress());
+					selected = endpoints.isEmpty() ? null : endpoints.get(0);
+					stale = false;
+				}
+			}
+		}
+		return endpoints;
+	}
+
+	private static List<Endpoint> parse(String configAddress)
+	{
+		List<Endpoint> parsed = new ArrayList<>();
+		for (String serverAddress : configAddress.split(","))
+		{
+			// Remove whitespace and trailing slash(es) if exists
+			serverAddress = serverAddress.trim().replaceAll("/+$", "");
+			if (serverAddress.isEmpty())
+			{
+				continue;
+			}
+			if (!serverAddress.contains("http"))
+			{
+				serverAddress = "http://" + serverAddress;
+			}
+			try
+			{
+				// URL must use HTTP/S protocol
+				if (new URL(serverAddress).getProtocol().contains("http"))
+				{
+					parsed.add(new Endpoint(serverAddress));
+					continue;
+				}
+			}
+			catch (Exception e)
+			{
+				// Fall through to the warning
+			}
+			log.warn("Invalid server address, skipping: {}", serverAddress);
+		}
+		return Collections.unmodifiableList(parsed);
+	}
+
+	/**
+	 * Checks if the config has at least one valid server address.
+	 *
+	 * @return whether there is an endpoint to use
+	 */
+	public boolean isValid()
+	{
+		return !getEndpoints().isEmpty();
+	}
+
+	/**
+	 * Gets the base URL of the selected endpoint.
+	 *
+	 * @return server base URL, empty if there is none
+	 */
+	public String getBaseUrl()
+	{
+		getEndpoints();
+		final Endpoint endpoint = selected;
+		return endpoint != null ? endpoint.getBaseUrl() : "";
+	}
+
+	/**
+	 * Gets the base URL of the endpoint to hedge slow pings to, if hedging
+	 * is enabled in the plugin config.
+	 *
+	 * @return base URL of the next fastest healthy endpoint, or null if none
+	 */
+	public String getHedgeUrl()
+	{
+		if (!config.hedgePings())
+		{
+			return null;
+		}
+		final Endpoint current = selected;
+		Endpoint hedge = null;
+		final long now = System.currentTimeMillis();
+		for (Endpoint endpoint : getEndpoints())
+		{
+			if (endpoint != current && endpoint.isUp(now) && (hedge == null || endpoint.rtt < hedge.rtt))
+			{
+				hedge = endpoint;
+			}
+		}
+		return hedge != null ? hedge.getBaseUrl() : null;
+	}
+
+	/**
+	 * Gets how long to wait on the selected endpoint before hedging.
+	 *
+	 * @return delay in ms
+	 */
+	public long getHedgeDelay()
+	{
+		final Endpoint endpoint = selected;
+		if (endpoint == null || endpoint.rtt == Long.MAX_VALUE)
+		{
+			return MIN_HEDGE_DELAY * 5;
+		}
+		return Math.max(MIN_HEDGE_DELAY, endpoint.rtt * 2);
+	}
+
+	/**
+	 * Marks the endpoint at a base URL as down, failing over to the next
+	 * fastest one if it was selected.
+	 *
+	 * @param baseUrl base URL of the endpoint that failed
+	 */
+	public void reportFailure(String baseUrl)
+	{
+		for (Endpoint endpoint : getEndpoints())
+		{
+			if (endpoint.getBaseUrl().equals(baseUrl))
+			{
+				endpoint.downUntil = System.currentTimeMillis() + DOWN_PERIOD;
+			}
+		}
+		select(true);
+	}
+
+	/**
+	 * Measures the round trip time of every endpoint, then selects the
+	 * fastest healthy one. Results are applied as the probes complete.
+	 */
+	public void probe()
+	{
+		final List<Endpoint> probed = getEndpoints();
+		// Nothing to choose from
+		if (probed.size() < 2)
+		{
+			return;
+		}
+		for (Endpoint endpoint : probed)
+		{
+			final long start = System.nanoTime();
+			Request request = new Request.Builder().url(endpoint.getBaseUrl()).head().build();
+			client.newCall(request).enqueue(new Callback()
+			{
+				@Override
+				public void onFailure(@NonNull Call call, @NonNull IOException e)
+				{
+					log.debug("Probe to {} failed: {}", endpoint.getBaseUrl(), String.valueOf(e));
+					endpoint.downUntil = System.currentTimeMillis() + DOWN_PERIOD;
+					select(true);
+				}
+
+				@Override
+				public void onResponse(@NonNull Call call, @NonNull Response response)
+				{
+					response.close();
+					// Any response at all means the server is up
+					endpoint.sample((System.nanoTime() - start) / 1_000_000);
+					endpoint.downUntil = 0;
+					select(false);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Selects the fastest healthy endpoint, keeping the current one unless
+	 * it's down or another is clearly faster, and notifies the selection
+	 * listener if it switched.
+	 *
+	 * @param failover whether the current endpoint may have gone down
+	 */
+	private void select(boolean failover)
+	{
+		final boolean switched;
+		synchronized (this)
+		{
+			switched = updateSelection(failover);
+		}
+		if (switched && selectionListener != null)
+		{
+			selectionListener.run();
+		}
+	}
+
+	private boolean updateSelection(boolean failover)
+	{
+		final long now = System.currentTimeMillis();
+		Endpoint best = null;
+		for (Endpoint endpoint : endpoints)
+		{
+			if (endpoint.isUp(now) && (best == null || endpoint.rtt < best.rtt))
+			{
+				best = endpoint;
+			}
+		}
+		final Endpoint current = selected;
+		// If everything is down, keep trying the current endpoint
+		if (best == null || best == current)
+		{
+			return false;
+		}
+		final boolean currentUp = current != null && current.isUp(now);
+		if (!currentUp || best.rtt < current.rtt * SWITCH_RATIO)
+		{
+			log.debug("Switching server endpoint {} => {}{}", current != null ? current.getBaseUrl() : null,
+				best.getBaseUrl(), failover && !currentUp ? " (failover)" : "");
+			selected = best;
+			return true;
+		}
+		return false;
+	}
+
+	private static class Endpoint
+	{
+		@Getter
+		final private String baseUrl;
+
+		/* Smoothed round trip time in ms, MAX_VALUE until probed */
+		private volatile long rtt = Long.MAX_VALUE;
+
+		/* Local time until which the endpoint is considered down */
+		private volatile long downUntil;
+
+		Endpoint(String baseUrl)
+		{
+			this.baseUrl = baseUrl;
+		}
+
+		boolean isUp(long now)
+		{
+			return now >= downUntil;
+		}
+
+		void sample(long sampleRtt)
+		{
+			rtt = rtt == Long.MAX_VALUE ? sampleRtt : (long) (rtt * (1 - RTT_WEIGHT) + sampleRtt * RTT_WEIGHT);
+		}
+	}
+}
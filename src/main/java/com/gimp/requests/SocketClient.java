@@ -24,37 +24,63 @@
  */
 package com.gimp.requests;
 
-import com.gimp.GimPluginConfig;
 import io.socket.client.Ack;
 import io.socket.client.Socket;
 import io.socket.engineio.client.transports.Polling;
 import io.socket.engineio.client.transports.WebSocket;
 import java.net.URI;
 import io.socket.client.IO;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 @Getter
 @Slf4j
-public class SocketClient extends RequestClient
+public class SocketClient extends PersistentClient
 {
 	public Socket client;
 
 	private static final String EVENT_CONNECTION_ACK = "connection-ack";
 
-	public SocketClient(String namespace, GimPluginConfig config)
+	private static final String EVENT_BROADCAST = "broadcast";
+
+	private static final String EVENT_CAPABILITIES = "capabilities";
+
+	/* How long to wait for the server to ack the join, since older servers never do */
+	private static final long JOIN_ACK_TIMEOUT = 2000;
+
+	/* Whether the latest connection has joined the group's room */
+	private volatile boolean joined;
+
+	/* Whether the server accepts a field list in "ping", see ping */
+	@Setter
+	private volatile boolean sendFields;
+
+	public SocketClient(String namespace, ServerEndpoints endpoints)
 	{
 		this.namespace = namespace;
-		this.config = config;
+		this.endpoints = endpoints;
 	}
 
 	/**
 	 * Connects the socket to the server at the base URL, using default config
 	 * for the connection. On connection, sets up socket listeners for socket
-	 * lifecycle events, e.g. connect, disconnect, connect_error.
+	 * lifecycle events, e.g. connect, disconnect, connect_error. If there is
+	 * anything to resume, the connection-ack carries the last seen sequence
+	 * number of each gimp.
+	 * <p>
+	 * The client only counts as connected once the server acks the join, or
+	 * the ack is overdue, since broadcasts sent before then wouldn't reach
+	 * the room.
 	 */
+	@Override
 	public void connect()
 	{
 		if (!validateUrl())
@@ -62,7 +88,9 @@ public class SocketClient extends RequestClient
 			log.warn("Invalid socket URL, aborting");
 			return;
 		}
-		URI uri = URI.create(getBaseUrl());
+		final String baseUrl = getBaseUrl();
+		connectedUrl = baseUrl;
+		URI uri = URI.create(baseUrl);
 		IO.Options options = IO.Options.builder()
 			// IO factory options
 			.setForceNew(false).setMultiplex(true)
@@ -79,28 +107,75 @@ public class SocketClient extends RequestClient
 		{
 			client.close();
 		}
-		client = IO.socket(uri, options);
+		joined = false;
+		final Socket socket = IO.socket(uri, options);
+		client = socket;
 		client.connect();
 
 		client.on(Socket.EVENT_CONNECT, args -> {
 			log.debug("Socket connected");
+			joined = false;
 			String roomId = namespace;
-			client.emit(EVENT_CONNECTION_ACK, roomId);
+			final Map<String, Long> lastSeen = buildResumeRequest();
+			final AtomicBoolean joinHandled = new AtomicBoolean();
+			final Runnable onJoined = () -> {
+				if (socket == client && socket.connected() && joinHandled.compareAndSet(false, true))
+				{
+					joined = true;
+					log.debug("Socket joined room");
+					fire(connectListener);
+				}
+			};
+			final Ack joinAck = ackArgs -> {
+				onJoined.run();
+				if (lastSeen != null && ackArgs.length > 0 && ackArgs[0] != null)
+				{
+					fire(resumeListener, ackArgs[0].toString());
+				}
+			};
+			if (lastSeen == null)
+			{
+				client.emit(EVENT_CONNECTION_ACK, roomId, joinAck);
+			}
+			else
+			{
+				// Servers that can't resume ignore the extra argument and never ack
+				client.emit(EVENT_CONNECTION_ACK, roomId, new JSONObject(lastSeen), joinAck);
+			}
+			CompletableFuture.delayedExecutor(JOIN_ACK_TIMEOUT, TimeUnit.MILLISECONDS).execute(onJoined);
+			// Sent on its own, so older servers that ignore it never see an
+			// extra argument shifting the ack of connection-ack
+			if (capabilities != null)
+			{
+				client.emit(EVENT_CAPABILITIES, new JSONObject(capabilities), (Ack) ackArgs -> {
+					if (ackArgs.length > 0 && ackArgs[0] != null)
+					{
+						fire(capabilitiesListener, ackArgs[0].toString());
+					}
+				});
+			}
 		});
 
 		client.on(Socket.EVENT_DISCONNECT, args -> {
 			log.debug("Socket disconnected");
+			joined = false;
+			fire(disconnectListener);
 		});
 
 		client.on(Socket.EVENT_CONNECT_ERROR, args -> {
 			log.warn("Failed to connect to socket server, closing");
 			client.close();
+			endpoints.reportFailure(baseUrl);
+			fire(connectErrorListener);
 		});
+
+		client.on(EVENT_BROADCAST, args -> fire(broadcastListener, args[0].toString()));
 	}
 
 	/**
 	 * Disconnects the client from the socket server.
 	 */
+	@Override
 	public void disconnect()
 	{
 		if (client != null)
@@ -110,15 +185,17 @@ public class SocketClient extends RequestClient
 	}
 
 	/**
-	 * Checks if the client is connected to a socket server.
+	 * Checks if the client is connected to a socket server and has joined
+	 * the group's room.
 	 *
 	 * @return whether socket is connected
 	 */
+	@Override
 	public boolean isConnected()
 	{
 		if (client != null)
 		{
-			return client.connected();
+			return joined && client.connected();
 		}
 		return false;
 	}
@@ -126,17 +203,28 @@ public class SocketClient extends RequestClient
 	/**
 	 * Sends a socket message to the ping listener. Expects an acknowledgement
 	 * from the server, and returns the JSON data in that acknowledgement.
+	 * Only requests some fields if the server said it accepts a field list,
+	 * since older servers expect the ack to be the only argument of "ping".
 	 *
+	 * @param fields keys of the fields to request for each gimp, or null for all
 	 * @return future of ack data in JSON
 	 */
-	public CompletableFuture<String> ping()
+	public CompletableFuture<String> ping(List<String> fields)
 	{
 		String EVENT_PING = "ping";
 		CompletableFuture<String> socketResponse = new CompletableFuture<>();
-		client.emit(EVENT_PING, (Ack) args -> {
+		Ack ack = args -> {
 			JSONObject data = (JSONObject) args[0];
 			socketResponse.complete(data.toString());
-		});
+		};
+		if (sendFields && fields != null)
+		{
+			client.emit(EVENT_PING, new JSONArray(fields), ack);
+		}
+		else
+		{
+			client.emit(EVENT_PING, ack);
+		}
 		return socketResponse;
 	}
 
@@ -149,7 +237,6 @@ public class SocketClient extends RequestClient
 	 */
 	public CompletableFuture<String> broadcast(String dataJson)
 	{
-		String EVENT_BROADCAST = "broadcast";
 		CompletableFuture<String> socketResponse = new CompletableFuture<>();
 		client.emit(EVENT_BROADCAST, dataJson, (Ack) args -> {
 			JSONObject data = (JSONObject) args[0];
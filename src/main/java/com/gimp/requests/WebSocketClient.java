@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * A PersistentClient over a plain WebSocket, without the socket.io protocol
+ * on top of it. Every frame is a JSON object with a "type"; requests carry an
+ * "id" that the server echoes in its "ack" frame, e.g.
+ * <pre>
+ * {"type":"broadcast","id":1,"data":{...}} => {"type":"ack","id":1,"data":{...}}
+ * </pre>
+ * Unlike the socket.io client, it does not reconnect on its own.
+ * <p>
+ * If the server accepts the offer to compress made when connecting, both
+ * sides send binary frames compressed with a DeflateCodec instead.
+ */
+@Slf4j
+public class WebSocketClient extends PersistentClient
+{
+	private static final String PATH = "/ws";
+
+	private static final int NORMAL_CLOSURE = 1000;
+
+	private static final String TYPE_KEY = "type";
+
+	private static final String ID_KEY = "id";
+
+	private static final String DATA_KEY = "data";
+
+	private static final String COMPRESSION_KEY = "compression";
+
+	private static final String CAPABILITIES_KEY = "capabilities";
+
+	private static final String TYPE_CONNECTION_ACK = "connection-ack";
+
+	private static final String TYPE_PING = "ping";
+
+	private static final String TYPE_BROADCAST = "broadcast";
+
+	private static final String TYPE_ACK = "ack";
+
+	final private OkHttpClient client;
+
+	final private Gson gson;
+
+	final private AtomicInteger nextId = new AtomicInteger();
+
+	/* Requests awaiting an ack, by request ID */
+	final private Map<Integer, CompletableFuture<String>> pendingAcks = new ConcurrentHashMap<>();
+
+	private volatile WebSocket webSocket;
+
+	private volatile boolean connected;
+
+	/* Supplies the member names for the compression dictionary, no compression if unset */
+	@Setter
+	private Supplier<Collection<String>> dictionaryNames;
+
+	/* Codec offered on the latest connect, which the server may compress with from then on */
+	private volatile DeflateCodec codec;
+
+	/* Whether the server accepted the codec, so frames sent to it are compressed too */
+	private volatile boolean compressing;
+
+	/* Whether the server answered the latest connect with something other than an upgrade */
+	@Getter
+	private volatile boolean upgradeRejected;
+
+	public WebSocketClient(String namespace, OkHttpClient client, ServerEndpoints endpoints, Gson gson)
+	{
+		this.namespace = namespace;
+		this.client = client;
+		this.endpoints = endpoints;
+		this.gson = gson;
+	}
+
+	/**
+	 * Opens a WebSocket to the server at the base URL. Once open, joins the
+	 * group's room with a connection-ack, which carries the last seen sequence
+	 * number of each gimp if there is anything to resume.
+	 */
+	@Override
+	public void connect()
+	{
+		if (!validateUrl())
+		{
+			log.warn("Invalid WebSocket URL, aborting");
+			return;
+		}
+		if (webSocket != null)
+		{
+			webSocket.cancel();
+		}
+		// OkHttp upgrades http(s) URLs to ws(s) itself
+		final String baseUrl = getBaseUrl();
+		connectedUrl = baseUrl;
+		Request request = new Request.Builder().url(baseUrl + PATH).build();
+		webSocket = client.newWebSocket(request, new Listener(baseUrl));
+	}
+
+	/**
+	 * Closes the WebSocket, failing any request still awaiting an ack.
+	 */
+	@Override
+	public void disconnect()
+	{
+		final WebSocket socket = webSocket;
+		if (socket == null)
+		{
+			return;
+		}
+		socket.close(NORMAL_CLOSURE, null);
+		if (onClose(socket))
+		{
+			log.debug("WebSocket disconnected");
+			fire(disconnectListener);
+		}
+	}
+
+	/**
+	 * Checks if the WebSocket is open and has joined the group's room.
+	 *
+	 * @return whether the client is connected
+	 */
+	@Override
+	public boolean isConnected()
+	{
+		return connected;
+	}
+
+	/**
+	 * Sends a "ping" frame, requesting only the given fields, and returns
+	 * the JSON data of the server's ack.
+	 *
+	 * @param fields keys of the fields to request for each gimp, or null for all
+	 * @return future of ack data in JSON
+	 */
+	public CompletableFuture<String> ping(List<String> fields)
+	{
+		JsonObject frame = new JsonObject();
+		if (fields != null)
+		{
+			frame.add("fields", gson.toJsonTree(fields));
+		}
+		return request(TYPE_PING, frame);
+	}
+
+	/**
+	 * Sends a "broadcast" frame with the JSON data and returns the
+	 * JSON data of the server's ack.
+	 *
+	 * @param dataJson request data in JSON
+	 * @return future of ack data in JSON
+	 */
+	public CompletableFuture<String> broadcast(String dataJson)
+	{
+		JsonObject frame = new JsonObject();
+		frame.add(DATA_KEY, gson.fromJson(dataJson, JsonElement.class));
+		return request(TYPE_BROADCAST, frame);
+	}
+
+	/**
+	 * Sends a frame of the given type with the next request ID, and
+	 * registers a future to be completed by the matching ack.
+	 *
+	 * @param type  frame type
+	 * @param frame frame to complete and send
+	 * @return future of ack data in JSON
+	 */
+	private CompletableFuture<String> request(String type, JsonObject frame)
+	{
+		final CompletableFuture<String> response = new CompletableFuture<>();
+		final WebSocket socket = webSocket;
+		if (socket == null)
+		{
+			response.completeExceptionally(new IOException("WebSocket is not open"));
+			return response;
+		}
+		final int id = nextId.incrementAndGet();
+		frame.addProperty(TYPE_KEY, type);
+		frame.addProperty(ID_KEY, id);
+		pendingAcks.put(id, response);
+		final String text = gson.toJson(frame);
+		final DeflateCodec frameCodec = codec;
+		boolean sent;
+		try
+		{
+			sent = compressing && frameCodec != null
+				? socket.send(ByteString.of(frameCodec.encode(text)))
+				: socket.send(text);
+		}
+		catch (IllegalStateException e)
+		{
+			// The codec was ended by the connection closing in the meantime
+			sent = false;
+		}
+		if (!sent)
+		{
+			pendingAcks.remove(id);
+			response.completeExceptionally(new IOException("WebSocket is closing"));
+		}
+		return response;
+	}
+
+	/**
+	 * Handles a text frame from the server, either an ack to one of our
+	 * requests or a broadcast pushed from another gimp.
+	 *
+	 * @param text frame JSON
+	 */
+	private void onFrame(String text)
+	{
+		final JsonObject frame;
+		try
+		{
+			frame = gson.fromJson(text, JsonObject.class);
+		}
+		catch (Exception e)
+		{
+			log.warn("Malformed WebSocket frame: {}", String.valueOf(e));
+			return;
+		}
+		if (frame == null || !frame.has(TYPE_KEY))
+		{
+			return;
+		}
+		final JsonElement data = frame.get(DATA_KEY);
+		final String dataJson = data == null || data.isJsonNull() ? null : data.toString();
+		switch (frame.get(TYPE_KEY).getAsString())
+		{
+			case TYPE_ACK:
+				if (!frame.has(ID_KEY) || !frame.get(ID_KEY).isJsonPrimitive())
+				{
+					log.debug("WebSocket ack without an ID");
+					break;
+				}
+				final CompletableFuture<String> response = pendingAcks.remove(frame.get(ID_KEY).getAsInt());
+				if (response != null)
+				{
+					response.complete(dataJson);
+				}
+				break;
+			case TYPE_BROADCAST:
+				if (dataJson != null)
+				{
+					fire(broadcastListener, dataJson);
+				}
+				break;
+			default:
+				log.debug("Unknown WebSocket frame type: {}", frame.get(TYPE_KEY));
+		}
+	}
+
+	/**
+	 * Joins the group's room once the WebSocket is open, resuming the
+	 * session if there is anything to resume. The client only counts as
+	 * connected once the server acks the join, since broadcasts sent
+	 * before then wouldn't reach the room.
+	 */
+	private void onOpen()
+	{
+		final WebSocket socket = webSocket;
+		JsonObject frame = new JsonObject();
+		frame.addProperty("room", namespace);
+		final Map<String, Long> lastSeen = buildResumeRequest();
+		if (lastSeen != null)
+		{
+			frame.add("resume", gson.toJsonTree(lastSeen));
+		}
+		if (capabilities != null)
+		{
+			frame.add(CAPABILITIES_KEY, gson.fromJson(capabilities, JsonElement.class));
+		}
+		endCodec();
+		codec = dictionaryNames != null ? new DeflateCodec(DeflateCodec.buildDictionary(dictionaryNames.get())) : null;
+		if (codec != null)
+		{
+			JsonObject compression = new JsonObject();
+			compression.addProperty(TYPE_KEY, DeflateCodec.NAME);
+			compression.addProperty("dictionary", Base64.getEncoder().encodeToString(codec.getDictionary()));
+			frame.add(COMPRESSION_KEY, compression);
+		}
+		request(TYPE_CONNECTION_ACK, frame).thenAccept(reply -> {
+			if (socket != webSocket)
+			{
+				return;
+			}
+			if (reply != null)
+			{
+				compressing = codec != null && isCompressionAccepted(reply);
+				final String serverCapabilities = getCapabilities(reply);
+				if (serverCapabilities != null)
+				{
+					fire(capabilitiesListener, serverCapabilities);
+				}
+			}
+			connected = true;
+			log.debug("WebSocket joined room");
+			fire(connectListener);
+			if (reply != null && lastSeen != null)
+			{
+				fire(resumeListener, reply);
+			}
+		});
+	}
+
+	/**
+	 * Checks if the connection-ack reply accepts the offered codec, i.e.
+	 * has "compression": "deflate-dict".
+	 *
+	 * @param reply connection-ack reply JSON
+	 * @return whether compression was accepted
+	 */
+	private boolean isCompressionAccepted(String reply)
+	{
+		try
+		{
+			final JsonElement compression = gson.fromJson(reply, JsonObject.class).get(COMPRESSION_KEY);
+			return compression != null && compression.isJsonPrimitive() && DeflateCodec.NAME.equals(compression.getAsString());
+		}
+		catch (Exception e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the server's capabilities from the connection-ack reply.
+	 *
+	 * @param reply connection-ack reply JSON
+	 * @return capabilities JSON, or null if the server didn't send any
+	 */
+	private String getCapabilities(String reply)
+	{
+		try
+		{
+			final JsonElement serverCapabilities = gson.fromJson(reply, JsonObject.class).get(CAPABILITIES_KEY);
+			return serverCapabilities != null && serverCapabilities.isJsonObject() ? serverCapabilities.toString() : null;
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Marks the client disconnected if the given WebSocket is still the
+	 * current one, frees its codec, and fails every request still awaiting
+	 * an ack.
+	 *
+	 * @param socket the WebSocket that closed
+	 * @return whether the client was connected
+	 */
+	private boolean onClose(WebSocket socket)
+	{
+		if (socket != webSocket)
+		{
+			return false;
+		}
+		final boolean wasConnected = connected;
+		connected = false;
+		webSocket = null;
+		endCodec();
+		pendingAcks.values().forEach(response -> response.completeExceptionally(new IOException("WebSocket closed")));
+		pendingAcks.clear();
+		return wasConnected;
+	}
+
+	/**
+	 * Stops compressing and frees the codec of the previous connection.
+	 */
+	private void endCodec()
+	{
+		final DeflateCodec previousCodec = codec;
+		codec = null;
+		compressing = false;
+		if (previousCodec != null)
+		{
+			previousCodec.end();
+		}
+	}
+
+	private class Listener extends WebSocketListener
+	{
+		/* Base URL of the endpoint the WebSocket was opened to */
+		final private String baseUrl;
+
+		Listener(String baseUrl)
+		{
+			this.baseUrl = baseUrl;
+		}
+
+		@Override
+		public void onOpen(@NonNull WebSocket socket, @NonNull Response response)
+		{
+			if (socket != webSocket)
+			{
+				return;
+			}
+			log.debug("WebSocket connected");
+			upgradeRejected = false;
+			WebSocketClient.this.onOpen();
+		}
+
+		@Override
+		public void onMessage(@NonNull WebSocket socket, @NonNull String text)
+		{
+			if (socket == webSocket)
+			{
+				onFrame(text);
+			}
+		}
+
+		@Override
+		public void onMessage(@NonNull WebSocket socket, @NonNull ByteString bytes)
+		{
+			final DeflateCodec frameCodec = codec;
+			if (socket != webSocket || frameCodec == null)
+			{
+				return;
+			}
+			try
+			{
+				onFrame(frameCodec.decode(bytes.toByteArray()));
+			}
+			catch (DataFormatException e)
+			{
+				log.warn("Malformed compressed frame: {}", String.valueOf(e));
+			}
+		}
+
+		@Override
+		public void onClosing(@NonNull WebSocket socket, int code, @NonNull String reason)
+		{
+			socket.close(NORMAL_CLOSURE, null);
+			if (onClose(socket))
+			{
+				log.debug("WebSocket disconnected: {} {}", code, reason);
+				fire(disconnectListener);
+			}
+		}
+
+		@Override
+		public void onFailure(@NonNull WebSocket socket, @NonNull Throwable t, Response response)
+		{
+			final boolean current = socket == webSocket;
+			if (onClose(socket))
+			{
+				log.warn("WebSocket connection lost: {}", String.valueOf(t));
+				fire(disconnectListener);
+			}
+			else if (current)
+			{
+				log.warn("Failed to connect to WebSocket server: {}", String.valueOf(t));
+				upgradeRejected = response != null;
+				if (!upgradeRejected)
+				{
+					endpoints.reportFailure(baseUrl);
+				}
+				fire(connectErrorListener);
+			}
+		}
+	}
+}
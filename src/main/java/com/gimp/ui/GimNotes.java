@@ -148,6 +148,12 @@ public class GimNotes extends JPanel
 
 	public void setNotes(String data)
 	{
+		// Avoid resetting the caret and undo history when nothing changed,
+		// e.g. when our own notes come back to us
+		if (data != null && data.equals(notesEditor.getText()))
+		{
+			return;
+		}
 		notesEditor.setText(data);
 	}
 
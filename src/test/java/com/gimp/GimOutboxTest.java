@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GimOutboxTest
+{
+	private static final String GROUP = "gimp group";
+
+	private static final String LOCAL = "local gimp";
+
+	private static final long TIMEOUT = 5000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Gson gson = new Gson();
+
+	private File dir;
+
+	private GimOutbox outbox;
+
+	@Before
+	public void setUp()
+	{
+		dir = folder.getRoot();
+		outbox = new GimOutbox(dir, GROUP, LOCAL, gson);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException
+	{
+		close();
+	}
+
+	@Test
+	public void recordsOnlyDurableFieldsOfLocalGimp()
+	{
+		assertTrue(outbox.record(data("notes", "bank the logs", "hp", 42), LOCAL, 1));
+		assertFalse(outbox.record(data("hp", 40), LOCAL, 2));
+		assertFalse(outbox.record(data("notes", "not ours"), "other gimp", 3));
+
+		final List<Map<String, Object>> pending = outbox.getPending();
+		assertEquals(1, pending.size());
+		assertEquals("bank the logs", pending.get(0).get("notes"));
+		assertEquals(1L, pending.get(0).get("seq"));
+		assertFalse(pending.get(0).containsKey("hp"));
+		assertEquals(1, outbox.getLastSeq());
+	}
+
+	@Test
+	public void acksOnlyTheValueThatWasSent()
+	{
+		outbox.record(data("notes", "first"), LOCAL, 1);
+		outbox.record(data("notes", "second"), LOCAL, 3);
+		// The ack of the first send doesn't cover the newer value
+		outbox.ack(List.of("name", "notes"), LOCAL, 1);
+		assertFalse(outbox.isEmpty());
+		assertEquals("second", outbox.getPending().get(0).get("notes"));
+
+		outbox.ack(List.of("name", "notes"), LOCAL, 3);
+		assertTrue(outbox.isEmpty());
+	}
+
+	@Test
+	public void replaysEachFieldWithItsSeq()
+	{
+		outbox.record(data("notes", "bank the logs"), LOCAL, 1);
+		outbox.record(data("lastActivity", "SKILLING", "ghostMode", true), LOCAL, 2);
+
+		final List<Map<String, Object>> pending = new ArrayList<>(outbox.getPending());
+		pending.sort(Comparator.comparingLong(message -> (Long) message.get("seq")));
+		assertEquals(2, pending.size());
+		assertEquals("bank the logs", pending.get(0).get("notes"));
+		assertEquals(LOCAL, pending.get(0).get("name"));
+		assertEquals("SKILLING", pending.get(1).get("lastActivity"));
+		assertEquals(true, pending.get(1).get("ghostMode"));
+	}
+
+	@Test
+	public void survivesRestart() throws InterruptedException
+	{
+		outbox.record(data("notes", "acked"), LOCAL, 1);
+		outbox.ack(List.of("notes"), LOCAL, 1);
+		outbox.record(data("lastActivity", "SKILLING"), LOCAL, 2);
+		reopen();
+
+		final List<Map<String, Object>> pending = outbox.getPending();
+		assertEquals(1, pending.size());
+		assertEquals("SKILLING", pending.get(0).get("lastActivity"));
+		assertEquals(2, outbox.getLastSeq());
+	}
+
+	@Test
+	public void compactsDownToPendingValues() throws InterruptedException, IOException
+	{
+		for (int seq = 1; seq <= 200; seq++)
+		{
+			outbox.record(data("notes", "notes " + seq), LOCAL, seq);
+		}
+		close();
+		assertTrue(countLines() < 100);
+
+		reopen();
+		assertEquals("notes 200", outbox.getPending().get(0).get("notes"));
+		assertEquals(200, outbox.getLastSeq());
+	}
+
+	@Test
+	public void deletesFileOnceEverythingIsAcked() throws InterruptedException
+	{
+		outbox.record(data("notes", "bank the logs"), LOCAL, 1);
+		outbox.ack(List.of("notes"), LOCAL, 1);
+		reopen();
+		assertTrue(outbox.isEmpty());
+		close();
+		assertEquals(0, listFiles().length);
+	}
+
+	@Test
+	public void keepsAccountsApart() throws InterruptedException
+	{
+		outbox.record(data("notes", "ours"), LOCAL, 1);
+		close();
+		outbox = new GimOutbox(dir, GROUP, "other gimp", gson);
+		assertTrue(outbox.isEmpty());
+	}
+
+	private static Map<String, Object> data(Object... keyValues)
+	{
+		final Map<String, Object> data = new HashMap<>();
+		data.put("name", LOCAL);
+		for (int i = 0; i < keyValues.length; i += 2)
+		{
+			data.put((String) keyValues[i], keyValues[i + 1]);
+		}
+		return data;
+	}
+
+	private void close() throws InterruptedException
+	{
+		outbox.close();
+		assertTrue(outbox.awaitClose(TIMEOUT));
+	}
+
+	private void reopen() throws InterruptedException
+	{
+		close();
+		outbox = new GimOutbox(dir, GROUP, LOCAL, gson);
+	}
+
+	private File[] listFiles()
+	{
+		return dir.listFiles((parent, name) -> name.startsWith("outbox-") && name.endsWith(".jsonl"));
+	}
+
+	private long countLines() throws IOException
+	{
+		long lines = 0;
+		for (File file : listFiles())
+		{
+			lines += Files.readAllLines(file.toPath()).size();
+		}
+		return lines;
+	}
+}
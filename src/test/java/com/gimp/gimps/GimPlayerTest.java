@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.gimps;
+
+import java.awt.Color;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GimPlayerTest
+{
+	private final GimPlayer gimp = new GimPlayer("gimp", 0, 301, Color.RED);
+
+	@Test
+	public void dropsLateFields()
+	{
+		assertTrue(gimp.acceptVersion(GimPlayer.HP, 2));
+		// e.g. a datagram overtaken by a newer one
+		assertFalse(gimp.acceptVersion(GimPlayer.HP, 1));
+		assertFalse(gimp.acceptVersion(GimPlayer.HP, 2));
+		assertTrue(gimp.acceptVersion(GimPlayer.HP, 3));
+	}
+
+	@Test
+	public void versionsFieldsIndependently()
+	{
+		assertTrue(gimp.acceptVersion(GimPlayer.LOCATION, 5));
+		assertTrue(gimp.acceptVersion(GimPlayer.HP, 4));
+		assertFalse(gimp.acceptVersion(GimPlayer.LOCATION, 4));
+	}
+
+	@Test
+	public void acceptsUnversionedFields()
+	{
+		assertTrue(gimp.acceptVersion(GimPlayer.HP, 2));
+		assertTrue(gimp.acceptVersion(GimPlayer.HP, 0));
+		// Unversioned data doesn't reset the version
+		assertFalse(gimp.acceptVersion(GimPlayer.HP, 1));
+	}
+
+	@Test
+	public void deltaVersionsFieldsBySeq()
+	{
+		final GimDelta delta = new GimDelta();
+		delta.setSeq(7);
+		delta.setHp(10);
+		assertTrue(delta.has(GimPlayer.HP));
+		assertFalse(delta.has(GimPlayer.PRAYER));
+		assertEquals(7, delta.getVersion(GimPlayer.HP));
+		delta.clear();
+		assertTrue(delta.isEmpty());
+	}
+}
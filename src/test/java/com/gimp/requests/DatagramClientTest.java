@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a DatagramClient against a local channel standing in for the server.
+ */
+public class DatagramClientTest
+{
+	private static final String ROOM = "gimp-test";
+
+	private static final long TIMEOUT = 5000;
+
+	private final Gson gson = new Gson();
+
+	private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+	private DatagramChannel server;
+
+	/* Address of the client, as seen by the server */
+	private SocketAddress clientAddress;
+
+	private DatagramClient client;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		server = openServer(0);
+		client = new DatagramClient(ROOM, "127.0.0.1", getServerPort(), gson);
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		client.stop();
+		server.close();
+	}
+
+	@Test
+	public void joinsOnStart() throws Exception
+	{
+		client.start(received::add);
+		final JsonObject join = receiveFrame();
+		assertEquals("join", join.get("type").getAsString());
+		assertEquals(ROOM, join.get("room").getAsString());
+		assertFalse(client.isJoined());
+
+		sendFrame("{\"type\":\"joined\"}");
+		awaitTrue(client::isJoined);
+	}
+
+	@Test
+	public void sendsBroadcastData() throws Exception
+	{
+		join();
+		assertTrue(client.broadcast("{\"name\":\"gimp\",\"hp\":42,\"seq\":3}"));
+		final JsonObject broadcast = receiveFrame();
+		assertEquals("broadcast", broadcast.get("type").getAsString());
+		assertEquals(ROOM, broadcast.get("room").getAsString());
+		final JsonObject data = broadcast.getAsJsonObject("data");
+		assertEquals(42, data.get("hp").getAsInt());
+		assertEquals(3, data.get("seq").getAsLong());
+	}
+
+	@Test
+	public void dropsOversizedBroadcasts() throws Exception
+	{
+		join();
+		final StringBuilder notes = new StringBuilder();
+		while (notes.length() < 2000)
+		{
+			notes.append("notes");
+		}
+		assertFalse(client.broadcast("{\"name\":\"gimp\",\"notes\":\"" + notes + "\"}"));
+	}
+
+	@Test
+	public void passesOnDatagramsInArrivalOrder() throws Exception
+	{
+		join();
+		// Datagrams aren't reordered, the receiver drops late ones by their sequence numbers
+		sendFrame("{\"type\":\"broadcast\",\"room\":\"" + ROOM + "\",\"data\":{\"name\":\"gimp\",\"hp\":10,\"seq\":2}}");
+		sendFrame("{\"type\":\"broadcast\",\"room\":\"" + ROOM + "\",\"data\":{\"name\":\"gimp\",\"hp\":20,\"seq\":1}}");
+		assertEquals(2, receiveData().get("seq").getAsLong());
+		assertEquals(1, receiveData().get("seq").getAsLong());
+	}
+
+	@Test
+	public void skipsMalformedDatagrams() throws Exception
+	{
+		join();
+		sendFrame("not json");
+		sendFrame("{\"room\":\"" + ROOM + "\"}");
+		sendFrame("{\"type\":\"broadcast\",\"room\":\"" + ROOM + "\",\"data\":\"gimp\"}");
+		sendFrame("{\"type\":\"broadcast\",\"room\":\"" + ROOM + "\",\"data\":{\"name\":\"gimp\",\"hp\":10}}");
+		assertEquals(10, receiveData().get("hp").getAsInt());
+		assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void survivesUnreachablePort() throws Exception
+	{
+		join();
+		final int port = getServerPort();
+		server.close();
+		// The closed port is reported on a later receive, which mustn't stop the reader
+		client.join();
+		awaitTrue(() -> !client.isJoined());
+		server = openServer(port);
+		client.join();
+		assertEquals("join", receiveFrame().get("type").getAsString());
+		sendFrame("{\"type\":\"joined\"}");
+		awaitTrue(client::isJoined);
+	}
+
+	@Test
+	public void doesNothingOnceStopped() throws Exception
+	{
+		client.stop();
+		client.start(received::add);
+		assertFalse(client.broadcast("{\"name\":\"gimp\",\"hp\":42}"));
+		assertFalse(client.isJoined());
+	}
+
+	private void join() throws Exception
+	{
+		client.start(received::add);
+		receiveFrame();
+		sendFrame("{\"type\":\"joined\"}");
+		awaitTrue(client::isJoined);
+	}
+
+	private static DatagramChannel openServer(int port) throws IOException
+	{
+		final DatagramChannel channel = DatagramChannel.open();
+		channel.bind(new InetSocketAddress("127.0.0.1", port));
+		channel.configureBlocking(false);
+		return channel;
+	}
+
+	private int getServerPort() throws IOException
+	{
+		return ((InetSocketAddress) server.getLocalAddress()).getPort();
+	}
+
+	private JsonObject receiveFrame() throws Exception
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate(2048);
+		final long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (System.currentTimeMillis() < deadline)
+		{
+			final SocketAddress from = server.receive(buffer);
+			if (from != null)
+			{
+				clientAddress = from;
+				buffer.flip();
+				return gson.fromJson(StandardCharsets.UTF_8.decode(buffer).toString(), JsonObject.class);
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("No datagram received");
+	}
+
+	private void sendFrame(String text) throws IOException
+	{
+		server.send(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), clientAddress);
+	}
+
+	private JsonObject receiveData() throws InterruptedException
+	{
+		final String dataJson = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull(dataJson);
+		return gson.fromJson(dataJson, JsonObject.class);
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException
+	{
+		final long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (!condition.getAsBoolean())
+		{
+			if (System.currentTimeMillis() >= deadline)
+			{
+				throw new AssertionError("Timed out");
+			}
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2026, David Vorona <davidavorona@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gimp.requests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.NetworkInterface;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs two LanClients of the same group against each other on the local
+ * machine, where multicast loops back.
+ */
+public class LanClientTest
+{
+	private static final String ROOM = "gimp-test";
+
+	private static final long TIMEOUT = 5000;
+
+	private final Gson gson = new Gson();
+
+	private final BlockingQueue<String> receivedA = new LinkedBlockingQueue<>();
+
+	private final BlockingQueue<String> receivedB = new LinkedBlockingQueue<>();
+
+	private int port;
+
+	private LanClient a;
+
+	private LanClient b;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		assumeTrue("No multicast interface", hasMulticastInterface());
+		try (DatagramSocket socket = new DatagramSocket(0))
+		{
+			port = socket.getLocalPort();
+		}
+		a = start(receivedA);
+		b = start(receivedB);
+	}
+
+	@After
+	public void tearDown()
+	{
+		if (a != null)
+		{
+			a.stop();
+		}
+		if (b != null)
+		{
+			b.stop();
+		}
+	}
+
+	@Test
+	public void deliversBroadcastsToPeers() throws Exception
+	{
+		a.broadcast("{\"name\":\"a\",\"hp\":42,\"seq\":1}").get();
+		final String dataJson = receivedB.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertNotNull(dataJson);
+		final JsonObject data = gson.fromJson(dataJson, JsonObject.class);
+		assertEquals("a", data.get("name").getAsString());
+		assertEquals(42, data.get("hp").getAsInt());
+	}
+
+	@Test
+	public void ignoresOwnBroadcasts() throws Exception
+	{
+		a.broadcast("{\"name\":\"a\",\"hp\":42}").get();
+		assertNotNull(receivedB.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertNull(receivedA.poll(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void ignoresOtherRooms() throws Exception
+	{
+		final LanClient other = new LanClient("other-group", port, gson);
+		try
+		{
+			other.broadcast("{\"name\":\"other\",\"hp\":42}").get();
+			a.broadcast("{\"name\":\"a\",\"hp\":10}").get();
+			// Datagrams from one sender arrive in order on loopback, so anything from the other room would be first
+			final String dataJson = receivedB.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+			assertNotNull(dataJson);
+			assertEquals("a", gson.fromJson(dataJson, JsonObject.class).get("name").getAsString());
+		}
+		finally
+		{
+			other.stop();
+		}
+	}
+
+	@Test
+	public void pingCollectsLatestDataOfPeers() throws Exception
+	{
+		b.broadcast("{\"name\":\"b\",\"hp\":10,\"maxHp\":99}").get();
+		b.broadcast("{\"name\":\"b\",\"hp\":20}").get();
+		final JsonObject gimps = gson.fromJson(a.ping(null).get(), JsonObject.class);
+		assertTrue(gimps.has("b"));
+		final JsonObject gimp = gimps.getAsJsonObject("b");
+		assertEquals(20, gimp.get("hp").getAsInt());
+		assertEquals(99, gimp.get("maxHp").getAsInt());
+		assertFalse(gimps.has("a"));
+	}
+
+	@Test
+	public void pingWithoutPeerDataIsEmpty() throws Exception
+	{
+		// Peers only answer with data they broadcast themselves
+		assertEquals("{}", a.ping(null).get());
+	}
+
+	@Test
+	public void failsOnceStopped() throws Exception
+	{
+		a.stop();
+		assertTrue(a.broadcast("{\"name\":\"a\",\"hp\":42}").isCompletedExceptionally());
+		assertTrue(a.ping(null).isCompletedExceptionally());
+	}
+
+	private LanClient start(BlockingQueue<String> received) throws Exception
+	{
+		final LanClient client = new LanClient(ROOM, port, gson);
+		client.start(received::add);
+		// Pinging opens the channel on this thread, so it has joined the group once this returns
+		client.ping(null).get();
+		return client;
+	}
+
+	private static boolean hasMulticastInterface() throws IOException
+	{
+		for (NetworkInterface iface : Collections.list(NetworkInterface.getNetworkInterfaces()))
+		{
+			if (iface.isUp() && iface.supportsMulticast())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}